@@ -0,0 +1,453 @@
+package software.blob.audio.apps;
+
+import software.blob.audio.thread.WavExecutor;
+import software.blob.audio.thread.callback.LogProgressCallback;
+import software.blob.audio.thread.callback.TaskCallback;
+import software.blob.audio.ui.editor.EditorProject;
+import software.blob.audio.ui.editor.layers.PianoRollLayer;
+import software.blob.audio.ui.editor.layers.PitchCurvesLayer;
+import software.blob.audio.ui.editor.layers.WaveformLayer;
+import software.blob.audio.ui.editor.track.Pattern;
+import software.blob.audio.ui.editor.track.Track;
+import software.blob.audio.ui.editor.track.TrackPattern;
+import software.blob.audio.ui.editor.track.generator.TileRenderer;
+import software.blob.audio.ui.editor.track.generator.WavGenerator;
+import software.blob.audio.ui.editor.track.generator.WavGeneratorLayer;
+import software.blob.audio.ui.editor.track.generator.WavGeneratorParams;
+import software.blob.audio.wave.WavWriter;
+import software.blob.audio.wave.resample.Resampler;
+import software.blob.ui.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders a project to a wav file from the command line, without the editor
+ * The timeline is rendered with the same generator tasks and tile renderer as an export
+ * from the editor, then the render time, real-time factor and peak heap usage are reported
+ */
+public class ProjectRenderApp {
+
+    private static final String TAG = "ProjectRenderApp";
+
+    private static final String USAGE = "Usage: ProjectRenderApp <project.json> <output.wav> [options]\n"
+            + "  --stems <dir>     Also write each track layer to its own file\n"
+            + "  --format <fmt>    pcm16 (default), pcm24 or float32\n"
+            + "  --rate <hz>       Output sample rate (default 44100)\n"
+            + "  --channels <n>    Output channels (default 2)\n"
+            + "  --quality <q>     Resampling quality: draft or high (default)\n"
+            + "  --tile <sec>      Seconds of the timeline rendered at a time (default 1)\n"
+            + "  --no-trim         Keep silence at the start and end of the mix";
+
+    // Names of the layers tracks have controls for, mapped by ID (the same as the editor's)
+    private static final Map<String, String> LAYERS = new LinkedHashMap<>();
+
+    // Layers that are rendered (the seed waveform isn't exported)
+    private static final Map<String, WavGeneratorLayer> GENERATORS = new LinkedHashMap<>();
+
+    // Gain of each track layer in the mix (the same as an export from the editor)
+    private static final TileRenderer.LayerGain GAIN = (track, layer) -> track.volume;
+
+    static {
+        LAYERS.put(PianoRollLayer.ID, "Piano Roll");
+        LAYERS.put(PitchCurvesLayer.ID, "Pitch Curves");
+        LAYERS.put(WaveformLayer.ID, "Waveform");
+
+        GENERATORS.put(PianoRollLayer.ID, (track, params) ->
+                PianoRollLayer.getGeneratorTasks(track, track.getLayer(PianoRollLayer.ID), params));
+        GENERATORS.put(PitchCurvesLayer.ID, (track, params) ->
+                PitchCurvesLayer.getGeneratorTasks(track, track.getLayer(PitchCurvesLayer.ID), params));
+    }
+
+    public static void main(String[] args) {
+
+        // Nothing here needs a display
+        System.setProperty("java.awt.headless", "true");
+
+        Options opts;
+        try {
+            opts = new Options(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            if (!render(opts))
+                System.exit(1);
+        } catch (Exception e) {
+            Log.e("Failed to render " + opts.project, e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Load and render a project
+     * @param opts Command line options
+     * @return True if all files were written
+     */
+    private static boolean render(Options opts) throws Exception {
+
+        // Load the project and its instruments
+        long loadStart = System.nanoTime();
+        EditorProject project = load(opts.project);
+        double loadTime = (System.nanoTime() - loadStart) / 1e9;
+        System.out.printf("Loaded %s (%d tracks) in %.2f s%n", opts.project.getName(),
+                project.tracks.size(), loadTime);
+
+        WavGeneratorParams params = new WavGeneratorParams();
+        params.startTime = 0;
+        params.endTime = project.getDuration();
+        params.channels = opts.channels;
+        params.sampleRate = opts.sampleRate;
+        params.quality = opts.quality;
+        params.tileDuration = opts.tileDuration;
+        params.ignoreMuted = true;
+        params.priority = WavExecutor.Priority.EXPORT;
+        if (!params.isValid())
+            throw new IllegalArgumentException("Invalid render parameters");
+
+        long renderStart = System.nanoTime();
+        TileRenderer renderer = WavGenerator.createRenderer(params, project.tracks, GENERATORS);
+        TaskCallback progress = new LogProgressCallback(TAG, "Rendering " + opts.project.getName());
+        boolean finished;
+        if (opts.stemsDir != null)
+            finished = renderStems(renderer, project.tracks, params, opts, progress);
+        else
+            finished = WavGenerator.export(renderer, params, GAIN, opts.output, opts.format, opts.trim, progress);
+        double renderTime = (System.nanoTime() - renderStart) / 1e9;
+        if (!finished)
+            return false;
+
+        // Real-time factor is the render time per second of audio (below 1 is faster than real time)
+        double duration = params.getDuration();
+        System.out.printf("Rendered %.1f s of audio in %.2f s (real-time factor %.3f, %.1fx real time)%n",
+                duration, renderTime, renderTime / duration, duration / renderTime);
+        System.out.printf("Peak heap usage: %.1f MB%n", getPeakHeapUsage() / (1024d * 1024d));
+        return true;
+    }
+
+    /**
+     * Load a project and hook up its track patterns
+     * @param file Project file
+     * @return Project
+     */
+    private static EditorProject load(File file) throws Exception {
+        EditorProject project = new EditorProject(LAYERS, file);
+
+        Map<Long, Pattern> patterns = new HashMap<>();
+        if (project.patterns != null) {
+            for (Pattern pattern : project.patterns)
+                patterns.put(pattern.id, pattern);
+        }
+
+        for (Track track : project.tracks) {
+            if (track.instrument == null)
+                Log.w(track.name + " doesn't have an instrument and will be silent");
+            if (track.patterns != null) {
+                Iterator<TrackPattern> it = track.patterns.iterator();
+                while (it.hasNext()) {
+                    TrackPattern tp = it.next();
+                    tp.pattern = patterns.get(tp.patternID);
+                    if (tp.pattern == null) {
+                        Log.w(track.name + " uses a missing pattern: " + tp.patternID);
+                        it.remove();
+                    }
+                }
+            }
+            track.updateDuration();
+        }
+        return project;
+    }
+
+    /**
+     * Render each track layer to its own file and the mix of them to the output file in one pass
+     * @return True if all files were written
+     */
+    private static boolean renderStems(TileRenderer renderer, List<Track> tracks, WavGeneratorParams params,
+                                       Options opts, TaskCallback progress) throws IOException {
+        if (!opts.stemsDir.isDirectory() && !opts.stemsDir.mkdirs())
+            throw new IOException("Failed to create stems directory: " + opts.stemsDir);
+
+        boolean finished = false;
+        StemWriter writer = new StemWriter(tracks, params, opts);
+        try {
+            finished = renderer.render(writer, progress);
+            if (finished)
+                writer.finish((long) Math.round(params.getDuration() * params.sampleRate));
+        } finally {
+            writer.close();
+
+            // Failed or canceled - don't leave partial files behind
+            if (!finished) {
+                for (File file : writer.getFiles()) {
+                    if (file.exists() && !file.delete())
+                        Log.w("Failed to delete partial file: " + file);
+                }
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Get the peak usage of the heap since the JVM started
+     * @return Peak usage in bytes (the sum of each heap pool's peak)
+     */
+    private static long getPeakHeapUsage() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null)
+                peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * Writes each track layer's tiles to its own file and sums them into the mix
+     * Layers are skipped for tiles they're silent in, so the gaps are filled with silence
+     * to keep every file aligned to the timeline
+     */
+    private static class StemWriter implements TileRenderer.TileConsumer, Closeable {
+
+        private final List<Track> tracks;
+        private final WavGeneratorParams params;
+        private final Options opts;
+
+        private final Output mix;
+        private final Map<String, Output> stems = new LinkedHashMap<>();
+
+        // Mix of the tile currently being rendered and silence for filling gaps
+        private final double[][] mixTile, silence;
+        private int mixFrame = -1, mixLength;
+
+        StemWriter(List<Track> tracks, WavGeneratorParams params, Options opts) throws IOException {
+            this.tracks = tracks;
+            this.params = params;
+            this.opts = opts;
+            int tileFrames = Math.max(1, (int) Math.round(params.tileDuration * params.sampleRate));
+            this.mixTile = new double[params.channels][tileFrames];
+            this.silence = new double[params.channels][tileFrames];
+            this.mix = new Output(opts.output);
+            this.mix.writer.setTrimSilence(opts.trim);
+        }
+
+        @Override
+        public void onTile(Track track, Track.Layer layer, double[][] samples, int frame, int length) {
+            try {
+                // Layer tiles arrive in timeline order, so a new frame means the last tile is done
+                if (frame != this.mixFrame) {
+                    flush();
+                    for (double[] s : this.mixTile)
+                        Arrays.fill(s, 0, length, 0);
+                    this.mixFrame = frame;
+                    this.mixLength = length;
+                }
+
+                Output stem = getStem(track, layer);
+                stem.write(samples, frame, length);
+
+                double gain = GAIN.getGain(track, layer);
+                for (int c = 0; c < samples.length; c++) {
+                    double[] src = samples[c], dst = this.mixTile[c];
+                    for (int i = 0; i < length; i++)
+                        dst[i] += src[i] * gain;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Write the last tile and pad every file to the end of the timeline
+         * @param numFrames Number of frames in the timeline
+         */
+        void finish(long numFrames) throws IOException {
+            flush();
+            this.mix.pad(numFrames);
+            for (Output stem : this.stems.values())
+                stem.pad(numFrames);
+        }
+
+        List<File> getFiles() {
+            List<File> files = new ArrayList<>();
+            files.add(this.mix.writer.getFile());
+            for (Output stem : this.stems.values())
+                files.add(stem.writer.getFile());
+            return files;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException error = null;
+            List<Output> outputs = new ArrayList<>(this.stems.values());
+            outputs.add(this.mix);
+            for (Output out : outputs) {
+                try {
+                    out.writer.close();
+
+                    // Out of range samples are clipped by the writer
+                    if (out.writer.getClippedSamples() > 0)
+                        Log.w(out.writer.getFile().getName() + " has audio clipping!");
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            if (error != null)
+                throw error;
+        }
+
+        private void flush() throws IOException {
+            if (this.mixFrame >= 0) {
+                this.mix.write(this.mixTile, this.mixFrame, this.mixLength);
+                this.mixFrame = -1;
+            }
+        }
+
+        private Output getStem(Track track, Track.Layer layer) throws IOException {
+            int index = this.tracks.indexOf(track) + 1;
+            String key = index + "_" + (layer != null ? layer.name : "");
+            Output stem = this.stems.get(key);
+            if (stem == null) {
+                String name = String.format("%02d_%s", index, getFileName(track.name));
+                if (layer != null)
+                    name += "_" + getFileName(layer.name);
+                stem = new Output(new File(this.opts.stemsDir, name + ".wav"));
+                this.stems.put(key, stem);
+            }
+            return stem;
+        }
+
+        private static String getFileName(String name) {
+            return name.replaceAll("[^A-Za-z0-9.-]+", "_").toLowerCase();
+        }
+
+        /**
+         * Output file and the timeline frame it's written up to
+         */
+        private class Output {
+
+            final WavWriter writer;
+            long frames;
+
+            Output(File file) throws IOException {
+                this.writer = new WavWriter(file, params.channels, params.sampleRate, opts.format);
+            }
+
+            void write(double[][] samples, int frame, int length) throws IOException {
+                pad(frame);
+                this.writer.write(samples, 0, length);
+                this.frames += length;
+            }
+
+            void pad(long frame) throws IOException {
+                while (this.frames < frame) {
+                    int length = (int) Math.min(frame - this.frames, silence[0].length);
+                    this.writer.write(silence, 0, length);
+                    this.frames += length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Command line options
+     */
+    private static class Options {
+
+        File project, output, stemsDir;
+        WavWriter.Format format = WavWriter.Format.PCM_16;
+        int sampleRate = 44100;
+        int channels = 2;
+        Resampler.Quality quality = Resampler.Quality.HIGH;
+        double tileDuration = 1;
+        boolean trim = true;
+
+        Options(String[] args) throws IllegalArgumentException {
+            List<String> files = new ArrayList<>();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    files.add(arg);
+                    continue;
+                }
+                if (arg.equals("--no-trim")) {
+                    this.trim = false;
+                    continue;
+                }
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                String value = args[++i];
+                switch (arg) {
+                    case "--stems":
+                        this.stemsDir = new File(value);
+                        break;
+                    case "--format":
+                        this.format = getFormat(value);
+                        break;
+                    case "--rate":
+                        this.sampleRate = (int) getNumber(arg, value);
+                        break;
+                    case "--channels":
+                        this.channels = (int) getNumber(arg, value);
+                        break;
+                    case "--quality":
+                        this.quality = getQuality(value);
+                        break;
+                    case "--tile":
+                        this.tileDuration = getNumber(arg, value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (files.size() != 2)
+                throw new IllegalArgumentException("Expected a project file and an output file");
+            this.project = new File(files.get(0));
+            this.output = new File(files.get(1));
+            if (!this.project.isFile())
+                throw new IllegalArgumentException("Project file not found: " + this.project);
+        }
+
+        private static WavWriter.Format getFormat(String value) {
+            switch (value.toLowerCase()) {
+                case "pcm16":
+                    return WavWriter.Format.PCM_16;
+                case "pcm24":
+                    return WavWriter.Format.PCM_24;
+                case "float32":
+                    return WavWriter.Format.FLOAT_32;
+            }
+            throw new IllegalArgumentException("Unknown format: " + value);
+        }
+
+        private static Resampler.Quality getQuality(String value) {
+            for (Resampler.Quality q : Resampler.Quality.values()) {
+                if (q.name().equalsIgnoreCase(value))
+                    return q;
+            }
+            throw new IllegalArgumentException("Unknown quality: " + value);
+        }
+
+        private static double getNumber(String arg, String value) {
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + arg + ": " + value);
+            }
+        }
+    }
+}
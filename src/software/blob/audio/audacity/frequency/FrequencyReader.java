@@ -1,6 +1,7 @@
 package software.blob.audio.audacity.frequency;
 
 import software.blob.audio.audacity.fft.FFT;
+import software.blob.audio.thread.WavExecutor;
 import software.blob.audio.thread.WavProcessorService;
 import software.blob.audio.thread.WavProcessorTask;
 import software.blob.audio.thread.callback.ProgressCallback;
@@ -127,7 +128,7 @@ public class FrequencyReader {
 
         List<FrequencySample> results;
         if (multiThread) {
-            WavProcessorService service = new WavProcessorService();
+            WavProcessorService service = new WavProcessorService(WavExecutor.Priority.BACKGROUND);
             double timePerThread = endTime / service.getNumThreads();
             int loopsPerThread = (int) Math.ceil(timePerThread / interval);
             timePerThread = loopsPerThread * interval;
@@ -199,7 +200,7 @@ public class FrequencyReader {
         List<ReadTask> tasks = new ArrayList<>(clips.size());
         for (WavData wav : clips)
             tasks.add(new ReadTask(wav, interval));
-        new WavProcessorService().execute(tasks);
+        new WavProcessorService(WavExecutor.Priority.BACKGROUND).execute(tasks);
         List<FrequencyStats> results = new ArrayList<>();
         for (ReadTask t : tasks) {
             FrequencyStats stats = new FrequencyStats();
@@ -328,7 +329,7 @@ public class FrequencyReader {
         int start = 0;
         int windows = 0;
         while (start + windowSize <= width) {
-            System.arraycopy(wav.samples[channel], wavStart + start, in, 0, windowSize);
+            wav.copySamples(channel, wavStart + start, in, 0, windowSize);
 
             //WindowFunc(windowFunc, windowSize, in);
             fft.hannWindowFunc(true, in);
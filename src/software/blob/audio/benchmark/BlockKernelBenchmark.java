@@ -0,0 +1,104 @@
+package software.blob.audio.benchmark;
+
+import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.storage.SampleStorageType;
+
+/**
+ * Compares per-sample {@link WavData.ForEach} iteration against block kernels
+ * Several different lambdas are run through each call site first, as happens in
+ * the editor, so the per-sample call can't be inlined
+ * Usage: BlockKernelBenchmark [seconds]
+ */
+public class BlockKernelBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 120;
+        System.out.printf("%.0f seconds, %d channels%n", seconds, CHANNELS);
+        for (SampleStorageType type : SampleStorageType.values()) {
+            WavData wav = new WavData(type.allocate(CHANNELS, (int) (seconds * SAMPLE_RATE)), SAMPLE_RATE);
+            wav.processBlocks((c, f, block, offset, length) -> {
+                for (int i = 0; i < length; i++)
+                    block[offset + i] = Math.sin((f + i) * 0.01 * (c + 1)) * 0.5;
+                return true;
+            });
+            benchmark(type, wav);
+        }
+    }
+
+    private static void benchmark(SampleStorageType type, final WavData wav) {
+        final double[] sum = new double[1];
+        long samples = (long) wav.numFrames * wav.channels;
+
+        // Per-sample peak, min and sum scans
+        long perSample = time(() -> {
+            wav.forEachSample((c, f, amp) -> {
+                sum[0] = Math.max(sum[0], Math.abs(amp));
+                return true;
+            });
+            wav.forEachSample((c, f, amp) -> {
+                sum[0] = Math.min(sum[0], amp);
+                return true;
+            });
+            wav.forEachSample((c, f, amp) -> {
+                sum[0] += amp;
+                return true;
+            });
+        });
+
+        // The same scans as block kernels
+        long perBlock = time(() -> {
+            wav.forEachBlock((c, f, block, offset, length) -> {
+                double max = sum[0];
+                for (int i = offset; i < offset + length; i++)
+                    max = Math.max(max, Math.abs(block[i]));
+                sum[0] = max;
+                return true;
+            });
+            wav.forEachBlock((c, f, block, offset, length) -> {
+                double min = sum[0];
+                for (int i = offset; i < offset + length; i++)
+                    min = Math.min(min, block[i]);
+                sum[0] = min;
+                return true;
+            });
+            wav.forEachBlock((c, f, block, offset, length) -> {
+                double total = sum[0];
+                for (int i = offset; i < offset + length; i++)
+                    total += block[i];
+                sum[0] = total;
+                return true;
+            });
+        });
+
+        // Per-sample multiply vs the block-based multiply
+        long multiplySample = time(() -> wav.forEachSample((c, f, amp) -> {
+            wav.setSample(c, f, amp * 1.0001);
+            return true;
+        }));
+        long multiplyBlock = time(() -> wav.multiply(1.0001));
+
+        System.out.printf("%-7s scan: %8.1f -> %8.1f Msamples/s (%.1fx)  multiply: %8.1f -> %8.1f Msamples/s (%.1fx)  (%.3f)%n",
+                type.name().toLowerCase(),
+                rate(samples * 3, perSample), rate(samples * 3, perBlock), (double) perSample / perBlock,
+                rate(samples, multiplySample), rate(samples, multiplyBlock), (double) multiplySample / multiplyBlock,
+                sum[0]);
+    }
+
+    private static long time(Runnable r) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            r.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    private static double rate(long samples, long nanos) {
+        return samples / (nanos / 1e3);
+    }
+}
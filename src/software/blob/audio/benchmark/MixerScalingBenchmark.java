@@ -0,0 +1,85 @@
+package software.blob.audio.benchmark;
+
+import software.blob.audio.playback.AudioPlayer;
+import software.blob.audio.playback.AudioPlayerParams;
+import software.blob.audio.playback.NullAudioSink;
+import software.blob.audio.wave.WavData;
+
+/**
+ * Finds the maximum number of voices the player can sustain for each mix thread count
+ * Voices are mixed into a free-running null sink; a voice count is sustainable when mixing
+ * a period takes no more than the target fraction of the period's duration
+ * Usage: MixerScalingBenchmark [max mix threads] [voice sample rate] [target load]
+ */
+public class MixerScalingBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    // Length of each trial
+    private static final long WARM_UP_MS = 300;
+    private static final long MEASURE_MS = 700;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0])
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int voiceRate = args.length > 1 ? Integer.parseInt(args[1]) : 22050;
+        double targetLoad = args.length > 2 ? Double.parseDouble(args[2]) : 0.75;
+
+        // Looping voices, like held notes
+        WavData wav = new WavData(CHANNELS, 0.5, voiceRate);
+        wav.processBlocks((c, f, block, offset, length) -> {
+            for (int i = 0; i < length; i++)
+                block[offset + i] = Math.sin((f + i) * 0.05) * 0.01;
+            return true;
+        });
+        wav.setLoopFrames(0, wav.numFrames);
+
+        System.out.printf("%d cores, %d Hz voices, target load %.2f%n",
+                Runtime.getRuntime().availableProcessors(), voiceRate, targetLoad);
+        for (int threads = 0; threads <= maxThreads; threads++) {
+            // Double until the load is too high, then bisect
+            int low = 0, high = 16;
+            while (measureLoad(wav, threads, high) <= targetLoad) {
+                low = high;
+                high *= 2;
+            }
+            while (high - low > Math.max(1, low / 32)) {
+                int mid = (low + high) / 2;
+                if (measureLoad(wav, threads, mid) <= targetLoad)
+                    low = mid;
+                else
+                    high = mid;
+            }
+            double load = low > 0 ? measureLoad(wav, threads, low) : 0;
+            System.out.printf("%d mix threads: %d voices (load %.2f)%n", threads, low, load);
+        }
+    }
+
+    /**
+     * Mix a number of voices for a while
+     * @return Time spent mixing a period divided by the period's duration
+     */
+    private static double measureLoad(WavData wav, int threads, int voices) throws Exception {
+        NullAudioSink sink = new NullAudioSink();
+        AudioPlayerParams params = new AudioPlayerParams();
+        params.sampleRate = SAMPLE_RATE;
+        params.channels = CHANNELS;
+        params.sink = sink;
+        params.maxVoices = 0;
+        params.mixThreads = threads;
+        AudioPlayer player = new AudioPlayer(params);
+        for (int i = 0; i < voices; i++)
+            player.queue(player.createHandle(wav), 0L);
+
+        Thread.sleep(WARM_UP_MS);
+        long startFrames = sink.getFramesWritten();
+        long start = System.nanoTime();
+        Thread.sleep(MEASURE_MS);
+        long frames = sink.getFramesWritten() - startFrames;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        player.dispose();
+
+        return frames > 0 ? elapsed * SAMPLE_RATE / frames : Double.MAX_VALUE;
+    }
+}
@@ -0,0 +1,88 @@
+package software.blob.audio.benchmark;
+
+import software.blob.audio.playback.AudioHandle;
+import software.blob.audio.playback.AudioPlayer;
+import software.blob.audio.playback.AudioPlayerParams;
+import software.blob.audio.playback.NullAudioSink;
+import software.blob.audio.wave.WavData;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how much the audio thread allocates per buffer during steady-state playback
+ * A set of looping voices with volume calculators and callbacks is mixed into a
+ * free-running null sink, so the player renders as fast as it can
+ * Usage: PlayerAllocationBenchmark [voices] [seconds] [voice sample rate]
+ * Voices at a different sample rate than the player are converted while mixing
+ */
+public class PlayerAllocationBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FPS = 60;
+    private static final int CHANNELS = 2;
+
+    public static void main(String[] args) throws Exception {
+        int voices = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 5;
+        int voiceRate = args.length > 2 ? Integer.parseInt(args[2]) : SAMPLE_RATE;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation tracking isn't supported by this JVM");
+            return;
+        }
+
+        NullAudioSink sink = new NullAudioSink();
+        AudioPlayerParams params = new AudioPlayerParams(SAMPLE_RATE, FPS, CHANNELS);
+        params.sink = sink;
+        params.maxVoices = 0; // Mix every voice
+        AudioPlayer player = new AudioPlayer(params);
+
+        // Looping voices, like held notes
+        WavData wav = new WavData(CHANNELS, 0.5, voiceRate);
+        wav.processBlocks((c, f, block, offset, length) -> {
+            for (int i = 0; i < length; i++)
+                block[offset + i] = Math.sin((f + i) * 0.05) * 0.01;
+            return true;
+        });
+        wav.setLoopFrames(0, wav.numFrames);
+        final double[] volume = {0.5};
+        for (int i = 0; i < voices; i++) {
+            AudioHandle h = player.createHandle(wav);
+            h.setVolumeCalculator(() -> volume[0]);
+            h.setCallback(new AudioHandle.Callback() {
+                @Override
+                public void onPlayback(double time, int frame) {
+                }
+                @Override
+                public void onPlaybackFinished() {
+                }
+            });
+            player.queue(h, 0L);
+        }
+
+        // Warm up so class loading and JIT compilation aren't counted
+        Thread.sleep(5000);
+        Thread audio = sink.getWriterThread();
+        long tid = audio.getId();
+
+        long startBytes = threads.getThreadAllocatedBytes(tid);
+        long startBuffers = sink.getWriteCount();
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < seconds * 1e9) {
+            // Keep the volume moving so every buffer ramps
+            volume[0] = volume[0] == 0.5 ? 0.6 : 0.5;
+            Thread.sleep(5);
+        }
+        long bytes = threads.getThreadAllocatedBytes(tid) - startBytes;
+        long buffers = sink.getWriteCount() - startBuffers;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        double perBuffer = buffers > 0 ? (double) bytes / buffers : 0;
+        System.out.printf("%d voices: %d buffers in %.1f s (%.0fx real time)%n", voices, buffers, elapsed,
+                buffers / (elapsed * FPS));
+        System.out.printf("Audio thread allocated %d bytes (%.2f bytes/buffer), %d underruns - %s%n", bytes,
+                perBuffer, player.getUnderrunCount(), bytes == 0 ? "PASS" : "FAIL");
+        player.dispose();
+    }
+}
@@ -0,0 +1,71 @@
+package software.blob.audio.benchmark;
+
+import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.storage.SampleStorageType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares heap usage and read throughput of the sample storage backends
+ * for a set of instrument-sized samples
+ * Usage: SampleStorageBenchmark [numSamples] [seconds]
+ */
+public class SampleStorageBenchmark {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    public static void main(String[] args) {
+        int numSamples = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 4;
+
+        System.out.printf("%d samples x %.1f seconds, %d channels%n", numSamples, seconds, CHANNELS);
+        for (SampleStorageType type : SampleStorageType.values())
+            benchmark(type, numSamples, seconds);
+    }
+
+    private static void benchmark(SampleStorageType type, int numSamples, double seconds) {
+        long heapBefore = usedHeap();
+        List<WavData> wavs = new ArrayList<>(numSamples);
+        long storageBytes = 0;
+        for (int i = 0; i < numSamples; i++) {
+            WavData wav = new WavData(type.allocate(CHANNELS, (int) (seconds * SAMPLE_RATE)), SAMPLE_RATE);
+            for (int c = 0; c < CHANNELS; c++) {
+                for (int f = 0; f < wav.numFrames; f++)
+                    wav.setSample(c, f, Math.sin(f * 0.01 * (i + 1)) * 0.5);
+            }
+            storageBytes += wav.getStorage().getMemoryUsage();
+            wavs.add(wav);
+        }
+        long heapUsed = usedHeap() - heapBefore;
+
+        // Read everything back a few times in blocks, as the mixer would
+        double[] buf = new double[1024];
+        double sum = 0;
+        long start = System.nanoTime();
+        for (int iter = 0; iter < 3; iter++) {
+            for (WavData wav : wavs) {
+                for (int c = 0; c < CHANNELS; c++) {
+                    for (int f = 0; f < wav.numFrames; f += buf.length) {
+                        int len = wav.copySamples(c, f, buf, 0, buf.length);
+                        for (int i = 0; i < len; i++)
+                            sum += buf[i];
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-7s storage: %7.1f MB  heap: %7.1f MB  read: %7.1f ms  (%.3f)%n",
+                type.name().toLowerCase(), storageBytes / 1048576d, heapUsed / 1048576d,
+                elapsed / 1e6, sum);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,70 @@
+package software.blob.audio.benchmark;
+
+import software.blob.audio.thread.WavExecutor;
+import software.blob.audio.thread.WavProcessorService;
+import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.WavFile;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Measures how parallel wav loading scales with the number of decode threads
+ * Usage: WavLoadBenchmark [file.wav]
+ * If no file is specified, a ~150 MB 24-bit stereo test file is generated
+ */
+public class WavLoadBenchmark {
+
+    private static final int ITERATIONS = 3;
+    private static final int TEST_RATE = 44100;
+    private static final int TEST_SECONDS = 600;
+
+    public static void main(String[] args) throws Exception {
+        File file;
+        boolean generated = args.length == 0;
+        if (generated) {
+            file = File.createTempFile("wav_load_", ".wav");
+            writeTestFile(file);
+        } else
+            file = new File(args[0]);
+
+        try {
+            double mb = file.length() / (1024d * 1024d);
+            int cores = Runtime.getRuntime().availableProcessors();
+            System.out.printf("%s (%.1f MB), %d cores%n", file.getName(), mb, cores);
+
+            long single = 0;
+            for (int threads = 1; threads <= cores; threads = threads < cores ? Math.min(threads * 2, cores) : cores + 1) {
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    long start = System.nanoTime();
+                    new WavData(file, new WavProcessorService(WavExecutor.Priority.INTERACTIVE, threads));
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                if (threads == 1)
+                    single = best;
+                System.out.printf("  %2d threads: %8.1f ms  %8.1f MB/s  (%.2fx)%n", threads, best / 1e6,
+                        mb / (best / 1e9), (double) single / best);
+            }
+        } finally {
+            if (generated && !file.delete())
+                file.deleteOnExit();
+        }
+    }
+
+    private static void writeTestFile(File file) throws Exception {
+        int numFrames = TEST_RATE * TEST_SECONDS;
+        WavFile wavFile = WavFile.newWavFile(file, 2, numFrames, 24, TEST_RATE);
+        Random rand = new Random(0);
+        double[][] buf = new double[2][8192];
+        for (int f = 0; f < numFrames; f += 8192) {
+            int len = Math.min(8192, numFrames - f);
+            for (int c = 0; c < 2; c++) {
+                for (int i = 0; i < len; i++)
+                    buf[c][i] = rand.nextDouble() * 1.8 - 0.9;
+            }
+            wavFile.writeFrames(buf, len);
+        }
+        wavFile.close();
+    }
+}
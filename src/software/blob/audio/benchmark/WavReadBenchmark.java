@@ -0,0 +1,111 @@
+package software.blob.audio.benchmark;
+
+import software.blob.audio.wave.MappedWavReader;
+import software.blob.audio.wave.WavFile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares wav decode throughput of the stream reader against the memory-mapped reader
+ * Usage: WavReadBenchmark [file.wav ...]
+ * If no files are specified, 16-bit and 24-bit stereo test files are generated
+ */
+public class WavReadBenchmark {
+
+    private static final int ITERATIONS = 5;
+    private static final int BUF_SIZE = 8192;
+    private static final int TEST_RATE = 44100;
+    private static final int TEST_SECONDS = 300;
+
+    public static void main(String[] args) throws Exception {
+        List<File> files = new ArrayList<>();
+        List<File> generated = new ArrayList<>();
+        for (String arg : args)
+            files.add(new File(arg));
+        if (files.isEmpty()) {
+            for (int bits : new int[] {16, 24}) {
+                File f = File.createTempFile("wav_read_" + bits + "bit_", ".wav");
+                writeTestFile(f, bits);
+                generated.add(f);
+            }
+            files.addAll(generated);
+        }
+
+        try {
+            for (File f : files)
+                benchmark(f);
+        } finally {
+            for (File f : generated) {
+                if (!f.delete())
+                    f.deleteOnExit();
+            }
+        }
+    }
+
+    private static void benchmark(File file) throws Exception {
+        double mb = file.length() / (1024d * 1024d);
+        System.out.printf("%s (%.1f MB)%n", file.getName(), mb);
+
+        double[][] stream = null, mapped = null;
+        long streamBest = Long.MAX_VALUE, mappedBest = Long.MAX_VALUE;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            stream = readStream(file);
+            streamBest = Math.min(streamBest, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (MappedWavReader reader = new MappedWavReader(file)) {
+                mapped = reader.readAll();
+            }
+            mappedBest = Math.min(mappedBest, System.nanoTime() - start);
+        }
+
+        System.out.printf("  stream: %8.1f ms  %8.1f MB/s%n", streamBest / 1e6, mb / (streamBest / 1e9));
+        System.out.printf("  mapped: %8.1f ms  %8.1f MB/s  (%.1fx)%n", mappedBest / 1e6,
+                mb / (mappedBest / 1e9), (double) streamBest / mappedBest);
+        System.out.printf("  max difference: %g%n", maxDifference(stream, mapped));
+    }
+
+    private static double[][] readStream(File file) throws Exception {
+        WavFile wavFile = WavFile.openWavFile(file);
+        try {
+            double[][] samples = new double[wavFile.getNumChannels()][(int) wavFile.getNumFrames()];
+            int framesRead, offset = 0;
+            do {
+                framesRead = wavFile.readFrames(samples, offset, BUF_SIZE);
+                offset += framesRead;
+            } while (framesRead != 0);
+            return samples;
+        } finally {
+            wavFile.close();
+        }
+    }
+
+    private static void writeTestFile(File file, int bits) throws Exception {
+        int numFrames = TEST_RATE * TEST_SECONDS;
+        WavFile wavFile = WavFile.newWavFile(file, 2, numFrames, bits, TEST_RATE);
+        Random rand = new Random(0);
+        double[][] buf = new double[2][BUF_SIZE];
+        for (int f = 0; f < numFrames; f += BUF_SIZE) {
+            int len = Math.min(BUF_SIZE, numFrames - f);
+            for (int c = 0; c < 2; c++) {
+                for (int i = 0; i < len; i++)
+                    buf[c][i] = rand.nextDouble() * 1.8 - 0.9;
+            }
+            wavFile.writeFrames(buf, len);
+        }
+        wavFile.close();
+    }
+
+    private static double maxDifference(double[][] a, double[][] b) {
+        double max = 0;
+        for (int c = 0; c < a.length; c++) {
+            for (int f = 0; f < a[c].length; f++)
+                max = Math.max(max, Math.abs(a[c][f] - b[c][f]));
+        }
+        return max;
+    }
+}
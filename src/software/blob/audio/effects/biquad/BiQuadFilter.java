@@ -51,13 +51,15 @@ public abstract class BiQuadFilter extends AudioEffect {
     }
 
     protected void applyFilter(WavData wav, PassType type) {
-        for (int pass = 0; pass < pole.passes; pass++) {
-            FilterInstance filter = setupFilter(type, wav.sampleRate, cutoffFrequency, pole.bandwidth[pass]);
-            for (int c = 0; c < wav.channels; c++) {
-                filter.reset();
+        double[] samples = new double[wav.numFrames];
+        for (int c = 0; c < wav.channels; c++) {
+            wav.copySamples(c, 0, samples, 0, wav.numFrames);
+            for (int pass = 0; pass < pole.passes; pass++) {
+                FilterInstance filter = setupFilter(type, wav.sampleRate, cutoffFrequency, pole.bandwidth[pass]);
                 for (int f = 0; f < wav.numFrames; f++)
-                    wav.samples[c][f] = filter.transform(wav.samples[c][f]);
+                    samples[f] = filter.transform(samples[f]);
             }
+            wav.setSamples(c, 0, samples, 0, wav.numFrames);
         }
     }
 
@@ -86,11 +86,11 @@ public class SBSMSEffect extends AudioEffect {
                         + this.pitchArray.length + " != " + inWav.numFrames);
                 return null;
             }
-            output = process(inWav.samples, startTempo, endTempo, pitchArray);
+            output = process(inWav.getSamples(), startTempo, endTempo, pitchArray);
         } else {
             if (startTempo == 1 && endTempo == 1 && startPitch == 1 && endPitch == 1)
                 return inWav;
-            output = process(inWav.samples, startTempo, endTempo, startPitch, endPitch);
+            output = process(inWav.getSamples(), startTempo, endTempo, startPitch, endPitch);
         }
         WavData wav = new WavData(output, inWav.sampleRate);
         wav.name = inWav.name;
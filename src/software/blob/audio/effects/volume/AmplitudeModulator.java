@@ -28,10 +28,11 @@ public class AmplitudeModulator extends AudioEffect {
     @Override
     public WavData process(WavData input) {
         final WavData output = new WavData(input);
-        input.forEachSample((c, f, amp) -> {
-            int ac = Math.min(c, ampFactors.length - 1);
-            int af = Math.min(f, ampFactors[ac].length - 1);
-            output.samples[c][f] *= ampFactors[ac][af];
+        output.processBlocks((c, f, block, offset, length) -> {
+            double[] factors = ampFactors[Math.min(c, ampFactors.length - 1)];
+            int last = factors.length - 1;
+            for (int i = 0; i < length; i++)
+                block[offset + i] *= factors[Math.min(f + i, last)];
             return true;
         });
         return output;
@@ -130,8 +130,9 @@ public class FadeEffect extends AudioEffect {
                     framePct = Math.sin(framePct * (Math.PI / 2));
                     break;
             }
+            double factor = (startFactor * (1 - framePct)) + (endFactor * framePct);
             for (int c = 0; c < output.channels; c++)
-                output.samples[c][i] *= (startFactor * (1 - framePct)) + (endFactor * framePct);
+                output.setSample(c, i, output.getSample(c, i) * factor);
         }
 
         return output;
@@ -0,0 +1,84 @@
+package software.blob.audio.playback;
+
+/**
+ * Submix bus that voices are routed through on their way to the master output
+ * The bus volume is evaluated once per buffer and applied to every voice on the bus
+ * as a single gain curve, so voices don't need their own volume calculators for
+ * shared settings like track volume and mute
+ */
+public class AudioBus {
+
+    // Gain for each frame of the current buffer (only used while the gain is changing)
+    final double[] gain;
+
+    // Gain at the end of the current buffer and whether it's constant across the buffer
+    double level = 1;
+    boolean constant = true;
+
+    // First output frame of the buffer the gain was last updated for and the frame after it
+    private long updatedFrame = -1, updatedEnd = -1;
+
+    private volatile double volume = 1;
+    private volatile AudioHandle.VolumeCalc volumeCalc;
+
+    /**
+     * Use {@link AudioPlayer#createBus()}
+     * @param maxFrames Largest buffer the bus is used with
+     */
+    AudioBus(int maxFrames) {
+        this.gain = new double[maxFrames];
+    }
+
+    /**
+     * Set the bus volume
+     * @param volume Volume (0 to 1)
+     */
+    public void setVolume(double volume) {
+        this.volume = volume;
+    }
+
+    /**
+     * Set the volume calculator
+     * This is evaluated once per buffer while voices on the bus are playing
+     * @param volumeCalc Volume calculator (null to use {@link #setVolume(double)})
+     */
+    public void setVolumeCalculator(AudioHandle.VolumeCalc volumeCalc) {
+        this.volumeCalc = volumeCalc;
+    }
+
+    /**
+     * Get the current volume
+     * @return Volume (0 to 1)
+     */
+    public double getVolume() {
+        AudioHandle.VolumeCalc calc = this.volumeCalc;
+        return calc != null ? calc.getVolume() : this.volume;
+    }
+
+    /**
+     * Calculate the gain curve for a buffer (audio thread)
+     * Only the first call for a buffer has any effect
+     * @param bufStart First output frame of the buffer
+     * @param frames Number of frames in the buffer
+     * @param bufFrac Position of each frame within the buffer (0 to 1)
+     */
+    void update(long bufStart, int frames, double[] bufFrac) {
+        if (this.updatedFrame == bufStart)
+            return;
+
+        // Snap to the volume when the bus sat out the previous buffer, so a track muted
+        // while nothing was playing doesn't fade out at the start of the next buffer
+        boolean resume = this.updatedEnd != bufStart;
+        this.updatedFrame = bufStart;
+        this.updatedEnd = bufStart + frames;
+
+        double dst = getVolume();
+        double src = resume ? dst : this.level;
+        this.constant = src == dst || frames > this.gain.length;
+        if (!this.constant) {
+            for (int f = 0; f < frames; f++)
+                this.gain[f] = src + (dst - src) * bufFrac[f];
+        }
+        this.level = dst;
+    }
+}
@@ -1,33 +1,189 @@
 package software.blob.audio.playback;
 
 import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.resample.Resampler;
+import software.blob.audio.wave.storage.SampleStorage;
+import software.blob.audio.wave.storage.SilentSampleStorage;
 
 /**
  * Handle for audio that's being played using the {@link AudioPlayer}
+ * The wav is played as-is; sample rate and channel layout are converted while mixing
+ * Frames and times on the handle are in the wav's own sample rate
  */
 public class AudioHandle {
 
+    // Default voice priority
+    public static final int PRIORITY_NORMAL = 0;
+
+    // Never stolen and not counted against the player's voice limit
+    public static final int PRIORITY_PROTECTED = Integer.MAX_VALUE;
+
     public final WavData wav;
 
-    long time = -1;
+    // Output channel count and the rate converter (null when the wav is already at the output rate)
+    final int channels;
+    final Resampler resampler;
+    final double step;
+
+    // Source position (fractional when resampling) - frame is its integer part
+    double pos;
+    // Output frame this handle starts on (-1 = not queued, 0 = as soon as possible)
+    long startFrame = -1;
     int frame = 0;
     double srcVol = 1d;
     double dstVol = 1d;
-    VolumeCalc volumeCalc;
+    volatile VolumeCalc volumeCalc;
     Callback callback;
 
-    AudioHandle(WavData wav) {
-        this.wav = wav;
-    }
+    // Submix bus the voice is routed through (null to go straight to the master output)
+    volatile AudioBus bus;
+
+    // Voices with a lower priority are stolen first when the player runs out of voices
+    volatile int priority = PRIORITY_NORMAL;
+
+    // Resample with linear interpolation (set by the audio thread when it's overloaded)
+    boolean linear;
+
+    // Player this handle is queued on - changes go through its command ring while set
+    volatile AudioPlayer player;
 
-    void incrementFrame() {
-        frame++;
-        if (wav.isLoopable() && frame == wav.loopEndFrame)
-            frame = wav.loopStartFrame;
+    // Frame published by the audio thread after each buffer (-1 = not played yet)
+    // and the last frame the UI thread dispatched callbacks for
+    volatile int publishedFrame = -1;
+    int dispatchedFrame = -1;
+
+    // Where frame 0 of the wav lines up on the player's frame clock
+    volatile long outputOffset = Long.MIN_VALUE;
+
+    /**
+     * @param wav Wav data
+     * @param sampleRate Output sample rate
+     * @param channels Output channel count
+     */
+    AudioHandle(WavData wav, int sampleRate, int channels) {
+        this.wav = wav;
+        this.channels = channels;
+        this.resampler = wav.sampleRate != sampleRate
+                ? Resampler.get(wav.sampleRate, sampleRate, Resampler.Quality.DRAFT) : null;
+        this.step = this.resampler != null ? this.resampler.getStep() : 1;
     }
 
     void finish() {
         frame = wav.numFrames;
+        pos = frame;
+    }
+
+    /**
+     * Get the number of output frames that can be converted in one go (audio thread)
+     * A segment stops at the loop or clip end and has to fit the window buffer
+     * @param maxFrames Maximum number of output frames
+     * @param windowSize Size of the window buffer passed to {@link #read}
+     * @return Number of output frames
+     */
+    int getSegmentLength(int maxFrames, int windowSize) {
+        double end = isLooping() ? wav.loopEndFrame : wav.numFrames;
+        int n = (int) Math.ceil((end - pos) / step);
+        if (resampler != null)
+            n = Math.min(n, (int) ((windowSize - resampler.getKernelRadius() * 2 - 2) / step));
+        else
+            n = Math.min(n, windowSize);
+        return Math.max(1, Math.min(n, maxFrames));
+    }
+
+    /**
+     * Convert output frames for one output channel, starting at the current position (audio thread)
+     * This doesn't advance the position - call {@link #advance(int)} once all channels are read
+     * @param channel Output channel
+     * @param out Converted samples
+     * @param n Number of output frames (see {@link #getSegmentLength(int, int)})
+     * @param window Buffer for source frames
+     */
+    void read(int channel, double[] out, int n, double[] window) {
+        int srcChannels = wav.channels;
+        if (srcChannels <= channels || channel < channels - 1)
+            readChannel(Math.min(channel, srcChannels - 1), out, n, window, 1, false);
+        else {
+            // Mix the remaining source channels down into the last output channel
+            double amp = 1d / (srcChannels - channel);
+            for (int c = channel; c < srcChannels; c++)
+                readChannel(c, out, n, window, amp, c > channel);
+        }
+    }
+
+    private void readChannel(int srcChannel, double[] out, int n, double[] window, double amp, boolean add) {
+        SampleStorage src = wav.getStorage();
+        if (resampler == null) {
+            src.read(srcChannel, frame, window, 0, n);
+            for (int i = 0; i < n; i++)
+                out[i] = (add ? out[i] : 0) + window[i] * amp;
+            return;
+        }
+
+        // Copy the source frames under the kernel, repeating the first/last frame past the edges
+        int numFrames = wav.numFrames;
+        int radius = resampler.getKernelRadius();
+        int first = (int) Math.floor(pos) - radius + 1;
+        int last = (int) Math.floor(pos + (n - 1) * step) + radius;
+        int start = Math.max(first, 0), end = Math.min(last + 1, numFrames);
+        if (start < end)
+            src.read(srcChannel, start, window, start - first, end - start);
+        if (first < start) {
+            double edge = src.get(srcChannel, 0);
+            for (int f = first; f < Math.min(start, last + 1); f++)
+                window[f - first] = edge;
+        }
+        if (end <= last) {
+            double edge = src.get(srcChannel, numFrames - 1);
+            for (int f = Math.max(end, first); f <= last; f++)
+                window[f - first] = edge;
+        }
+        int length = last - first + 1;
+        double p = pos - first;
+        if (linear) {
+            for (int i = 0; i < n; i++) {
+                double x = p + i * step;
+                int b = (int) x;
+                double a0 = window[b], a1 = b + 1 < length ? window[b + 1] : a0;
+                out[i] = (add ? out[i] : 0) + (a0 + (a1 - a0) * (x - b)) * amp;
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++)
+            out[i] = (add ? out[i] : 0) + resampler.sample(window, length, p + i * step) * amp;
+    }
+
+    /**
+     * Move the position forward (audio thread)
+     * @param n Number of output frames played
+     */
+    void advance(int n) {
+        boolean looping = isLooping();
+        pos += n * step;
+        if (looping && pos >= wav.loopEndFrame)
+            pos -= wav.loopEndFrame - wav.loopStartFrame;
+        frame = (int) pos;
+    }
+
+    /**
+     * Check if this handle never produces any sound (audio thread)
+     * Silent handles only move their position so they can drive time codes
+     * @return True if silent
+     */
+    boolean isSilent() {
+        return wav.getStorage() instanceof SilentSampleStorage;
+    }
+
+    private boolean isLooping() {
+        return wav.isLoopable() && pos < wav.loopEndFrame && wav.loopStartFrame < wav.loopEndFrame;
+    }
+
+    /**
+     * Convert a number of wav frames to output frames
+     * @param frames Number of frames at the wav's sample rate
+     * @return Number of frames at the output sample rate
+     */
+    long toOutputFrames(double frames) {
+        return Math.round(frames / step);
     }
 
     /**
@@ -46,6 +202,17 @@ public class AudioHandle {
         return frame;
     }
 
+    /**
+     * Get the output frame where a given frame of this clip is heard
+     * This assumes playback continues without seeking or looping in between
+     * @param frame Frame within this clip
+     * @return Output frame on the player's frame clock or -1 if unknown
+     */
+    public long getOutputFrame(int frame) {
+        long offset = outputOffset;
+        return offset != Long.MIN_VALUE ? offset + toOutputFrames(frame) : -1;
+    }
+
     /**
      * Get the current playback time offset
      * @return Time in seconds
@@ -60,7 +227,16 @@ public class AudioHandle {
      * @param time Time in seconds
      */
     public void setTime(double time) {
+        AudioPlayer p = player;
+        if (p != null)
+            p.seek(this, time);
+        else
+            applyTime(time);
+    }
+
+    void applyTime(double time) {
         frame = Math.max(0, wav.getFrame(time));
+        pos = frame;
         if (frame > 1)
             srcVol = 0;
     }
@@ -78,7 +254,15 @@ public class AudioHandle {
      * @param vol Volume (0 to 1)
      */
     public void setVolume(double vol) {
-        if (time == -1 && frame == 0)
+        AudioPlayer p = player;
+        if (p != null)
+            p.setVolume(this, vol);
+        else
+            applyVolume(vol);
+    }
+
+    void applyVolume(double vol) {
+        if (startFrame == -1 && frame == 0)
             this.srcVol = vol;
         this.dstVol = vol;
     }
@@ -111,8 +295,36 @@ public class AudioHandle {
         double getVolume();
     }
 
+    /**
+     * Route this handle through a submix bus
+     * The bus volume is applied on top of the handle's own volume
+     * @param bus Bus created by the player this handle is queued on (null for none)
+     */
+    public void setBus(AudioBus bus) {
+        this.bus = bus;
+    }
+
+    public AudioBus getBus() {
+        return this.bus;
+    }
+
+    /**
+     * Set the voice priority
+     * When the player runs out of voices, lower priorities are stolen first
+     * @param priority Priority ({@link #PRIORITY_NORMAL} by default,
+     *                 {@link #PRIORITY_PROTECTED} to never be stolen)
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    public int getPriority() {
+        return this.priority;
+    }
+
     /**
      * Set event callback that's invoked during playback
+     * Callbacks are polled on the UI thread, so this must be set before the handle is queued
      * @param cb Event callback
      */
     public void setCallback(Callback cb) {
@@ -1,64 +1,163 @@
 package software.blob.audio.playback;
 
 import software.blob.audio.wave.WavData;
+import software.blob.ui.util.Log;
 
 import javax.sound.sampled.*;
-import javax.swing.*;
+import javax.swing.Timer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Audio playback for waveform sounds
  */
 public class AudioPlayer implements Runnable {
 
-    private final SourceDataLine speaker;
+    // Maximum number of commands waiting to be picked up by the audio thread
+    private static final int COMMAND_CAPACITY = 1024;
+
+    private final AudioPlayerParams params;
+    private final AudioFormat format;
+    private final AudioSink speaker;
+    private final Thread thread;
+    private volatile boolean running;
+
+    // The line is stopped and the audio thread is parked until a command arrives
+    private volatile boolean idle;
+
+    // Commands posted by other threads, drained by the audio thread once per buffer
+    private final CommandRing commands = new CommandRing(COMMAND_CAPACITY);
+    private final CommandRing.Handler commandHandler = this::onCommand;
+
+    // Owned by the audio thread
     private final List<AudioHandle> queued = new ArrayList<>();
     private final List<AudioHandle> removed = new ArrayList<>();
-    private boolean running, sleeping;
+    private final List<AudioHandle> played = new ArrayList<>();
+    private boolean sleeping;
+
+    // Output frame clock - the first frame of the next buffer the audio thread renders
+    // This advances by one buffer per write, including silent buffers
+    private volatile long renderFrame;
+
+    // Frame clock position of the line's frame 0 and frames written since the line was opened
+    private volatile long lineOrigin;
+    private long lineFrames;
+
+    // Polyphony limit and overload governor
+    private final VoiceManager voices;
+
+    // Underrun tracking
+    private volatile int underruns;
+    private int recentUnderruns;
+    private long adaptStart;
+    private boolean growPending;
+
+    // Handles with callbacks - the audio thread publishes their positions
+    // and the UI thread polls them on a timer
+    private final Queue<AudioHandle> watched = new ConcurrentLinkedQueue<>();
+    private final Timer callbackTimer;
 
     private final int sampleRate, channels, fps;
-    private final int bufSizeFrames, bufSizeBytes;
-    private final double[] bufFrac;
+
+    // Period size - changed by the audio thread when underruns repeat
+    private volatile int bufSizeFrames, bufSizeBytes;
+
+    // Mix buffers (owned by the audio thread)
+    private byte[] data;
+    private final MixBus bus = new MixBus();
+    private double[] bufFrac;
+
+    // Threads that help mix when there are enough voices (null to mix on the audio thread only)
+    private final MixPool pool;
+
+    // Master limiter (null to hard clip instead)
+    private final Limiter limiter;
 
     /**
      * Initialize the audio player
+     * @param params Output parameters
      * @throws LineUnavailableException If the line fails to initialize
      */
-    public AudioPlayer(int sampleRate, int fps, int channels) throws LineUnavailableException {
-        this.sampleRate = sampleRate;
-        this.channels = channels;
-        this.fps = fps;
-        this.bufSizeFrames = sampleRate / fps;
-        this.bufSizeBytes = bufSizeFrames * channels * 2;
-        this.bufFrac = new double[bufSizeFrames];
-        for (int i = 0; i < bufSizeFrames; i++)
-            bufFrac[i] = (double) i / bufSizeFrames;
-
-        AudioFormat fmt = new AudioFormat(sampleRate, 16, channels, true, false);
-        DataLine.Info speakerInfo = new DataLine.Info(SourceDataLine.class, fmt);
-
-        speaker = (SourceDataLine) AudioSystem.getLine(speakerInfo);
-        speaker.open(fmt, this.bufSizeBytes);
+    public AudioPlayer(AudioPlayerParams params) throws LineUnavailableException {
+        if (!params.isValid())
+            throw new IllegalArgumentException("Invalid audio player parameters");
+        this.params = params;
+        this.sampleRate = params.sampleRate;
+        this.channels = params.channels;
+        this.fps = params.callbackRate;
+        this.format = new AudioFormat(sampleRate, 16, channels, true, false);
+
+        this.voices = new VoiceManager(params);
+        this.limiter = params.limiterCeiling > 0 ? new Limiter(channels, sampleRate,
+                params.limiterLookahead, params.limiterCeiling, params.limiterRelease) : null;
+        this.pool = params.mixThreads > 0 ? new MixPool(params.mixThreads, channels, Thread.MAX_PRIORITY) : null;
+        this.speaker = params.sink != null ? params.sink : new LineAudioSink();
+        openLine(params.periodFrames);
 
         running = true;
         sleeping = true;
 
+        callbackTimer = new Timer(Math.max(1, 1000 / fps), e -> dispatchCallbacks());
+        callbackTimer.start();
+
         // Start the player thread
-        Thread t = new Thread(this, "AudioPlayer");
-        t.setDaemon(true);
-        t.setPriority(Thread.MAX_PRIORITY); // Audio should always be max priority
-        t.start();
+        thread = new Thread(this, "AudioPlayer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY); // Audio should always be max priority
+        thread.start();
+    }
+
+    /**
+     * Initialize the audio player
+     * @throws LineUnavailableException If the line fails to initialize
+     */
+    public AudioPlayer(int sampleRate, int fps, int channels) throws LineUnavailableException {
+        this(null, sampleRate, fps, channels);
+    }
+
+    /**
+     * Initialize the audio player on a specific output line
+     * @param line Output line (null to use the default speaker line)
+     *             The line is opened by the player
+     * @throws LineUnavailableException If the line fails to initialize
+     */
+    public AudioPlayer(SourceDataLine line, int sampleRate, int fps, int channels) throws LineUnavailableException {
+        this(lineParams(line, sampleRate, fps, channels));
+    }
+
+    private static AudioPlayerParams lineParams(SourceDataLine line, int sampleRate, int fps, int channels) {
+        AudioPlayerParams params = new AudioPlayerParams(sampleRate, fps, channels);
+        params.sink = new LineAudioSink(line);
+        return params;
     }
 
     public AudioPlayer() throws LineUnavailableException {
-        this(44100, 60, 2);
+        this(new AudioPlayerParams());
     }
 
+    /**
+     * Stop playback and close the sink
+     * This waits for the audio thread to finish its last write, so file sinks are complete on return
+     */
     public void dispose() {
         running = false;
+        LockSupport.unpark(thread);
+        callbackTimer.stop();
+        if (pool != null)
+            pool.dispose();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
     public int getSampleRate() {
@@ -73,46 +172,187 @@ public class AudioPlayer implements Runnable {
         return this.fps;
     }
 
+    /**
+     * Get the number of frames rendered per buffer (the period size)
+     * This may grow during playback if underruns repeat
+     * @return Buffer size in frames
+     */
+    public int getBufferFrames() {
+        return this.bufSizeFrames;
+    }
+
+    /**
+     * Get the number of periods buffered in the output line
+     * @return Period count
+     */
+    public int getPeriodCount() {
+        return params.periodCount;
+    }
+
+    /**
+     * Get the current output latency
+     * @return Latency in seconds
+     */
+    public double getLatency() {
+        return (double) (this.bufSizeFrames * params.periodCount + getLimiterLatency()) / this.sampleRate;
+    }
+
+    private int getLimiterLatency() {
+        return this.limiter != null ? this.limiter.getLatency() : 0;
+    }
+
+    /**
+     * Get the number of times the output line ran dry or stalled
+     * @return Underrun count
+     */
+    public int getUnderrunCount() {
+        return this.underruns;
+    }
+
+    /**
+     * Get the number of voices due to play in the last buffer, before any were stolen
+     * Protected handles aren't counted
+     * @return Voice count
+     */
+    public int getVoiceCount() {
+        return voices.getVoiceCount();
+    }
+
+    /**
+     * Get the current voice limit
+     * This drops below {@link AudioPlayerParams#maxVoices} while the mixer is overloaded
+     * @return Voice limit
+     */
+    public int getVoiceLimit() {
+        return voices.getVoiceLimit();
+    }
+
+    /**
+     * Get the number of voices that have been stolen
+     * @return Stolen voice count
+     */
+    public long getStolenCount() {
+        return voices.getStolenCount();
+    }
+
+    /**
+     * Get the time spent mixing relative to the period (smoothed)
+     * @return Load (1 = mixing takes as long as the audio it produces)
+     */
+    public double getLoad() {
+        return voices.getLoad();
+    }
+
+    /**
+     * Check if the mixer has switched to linear interpolation because it's overloaded
+     * @return True if resampling at reduced quality
+     */
+    public boolean isReducedQuality() {
+        return voices.isLinear();
+    }
+
+    /**
+     * Check if the output line is stopped because nothing is playing
+     * @return True if idle
+     */
+    public boolean isIdle() {
+        return this.idle;
+    }
+
+    /**
+     * Get the frame clock position the output line has played up to
+     * @return Output frame
+     */
+    public long getFramePosition() {
+        // Mixed frames reach the line after the limiter's look-ahead
+        return this.lineOrigin + speaker.getFramePosition() - getLimiterLatency();
+    }
+
+    /**
+     * Get the earliest output frame a sound can still be scheduled on exactly
+     * Sounds scheduled before this frame start as soon as possible instead
+     * @return Output frame
+     */
+    public long getNextFrame() {
+        // Leave a buffer of margin in case the audio thread is about to render
+        return this.renderFrame + this.bufSizeFrames;
+    }
+
+    /**
+     * Convert a duration to a number of output frames
+     * @param seconds Duration in seconds
+     * @return Number of frames
+     */
+    public long toFrames(double seconds) {
+        return Math.round(seconds * this.sampleRate);
+    }
+
     public WavData createClip(double duration) {
         return new WavData(this.channels, duration, this.sampleRate);
     }
 
     /**
      * Create a new audio handle which can be late queued
+     * The wav isn't copied - sample rate and channel count are converted while it plays
      * @param wav Sound effect
      * @return Audio handle
      */
     public AudioHandle createHandle(WavData wav) {
-        // Sample rate and channel count correction
-        if (wav.channels != this.channels || wav.sampleRate != this.sampleRate) {
-            wav = new WavData(wav);
-            wav.setChannels(this.channels);
-            wav.setSampleRate(this.sampleRate);
-        }
-        return new AudioHandle(wav);
+        return new AudioHandle(wav, this.sampleRate, this.channels);
     }
 
     /**
-     * Add a sound to the queue
+     * Create a submix bus for routing handles through with {@link AudioHandle#setBus(AudioBus)}
+     * @return Audio bus
+     */
+    public AudioBus createBus() {
+        return new AudioBus(Math.max(params.periodFrames, params.maxPeriodFrames));
+    }
+
+    /**
+     * Create a handle that plays audio streamed through a ring buffer
+     * The stream starts at the handle's frame when it's queued, so seek before queueing
+     * @param timeline Timeline wav (length, loop points and time codes) at the player's sample rate
+     * @param ring Ring the audio is rendered into
+     * @return Stream handle
+     */
+    public StreamAudioHandle createStreamHandle(WavData timeline, SampleRing ring) {
+        if (timeline.sampleRate != this.sampleRate)
+            throw new IllegalArgumentException("Stream timeline rate " + timeline.sampleRate
+                    + " doesn't match the output rate " + this.sampleRate);
+        return new StreamAudioHandle(timeline, ring, this.sampleRate, this.channels);
+    }
+
+    /**
+     * Add a sound to the queue, starting on an exact output frame
      * @param handle Audio handle
-     * @param delay Delay in milliseconds
+     * @param frame Output frame to start on (see {@link #getNextFrame()})
+     *              If this frame has already been rendered the sound starts as soon as possible
      * @return True if the sound was queued successfully
      */
-    public boolean queue(AudioHandle handle, long delay) {
+    public boolean queueAtFrame(AudioHandle handle, long frame) {
         // Don't queue any sounds while this isn't running
         if (!running)
             return false;
 
-        synchronized (queued) {
-            // Specify the time this sound should play
-            handle.time = curTime() + delay;
-
-            // Queue the sound and wake up the audio player
-            queued.add(handle);
-            sleeping = false;
-        }
+        // Specify the frame this sound should start on
+        frame = Math.max(0, frame);
+        handle.startFrame = frame;
+        handle.outputOffset = frame > 0 ? frame - handle.toOutputFrames(handle.pos) : Long.MIN_VALUE;
+        handle.player = this;
+        if (handle.callback != null)
+            watched.add(handle);
+        return post(CommandRing.ADD, handle, 0);
+    }
 
-        return true;
+    /**
+     * Add a sound to the queue
+     * @param handle Audio handle
+     * @param delay Delay in milliseconds
+     * @return True if the sound was queued successfully
+     */
+    public boolean queue(AudioHandle handle, long delay) {
+        return queueAtFrame(handle, delay > 0 ? getNextFrame() + delay * this.sampleRate / 1000 : 0);
     }
 
     public boolean queue(AudioHandle handle, double delay) {
@@ -147,10 +387,7 @@ public class AudioPlayer implements Runnable {
      * @param handle Audio handle
      */
     public void remove(AudioHandle handle) {
-        synchronized (queued) {
-            queued.remove(handle);
-            removed.add(handle);
-        }
+        post(CommandRing.REMOVE, handle, 0);
     }
 
     /**
@@ -160,19 +397,77 @@ public class AudioPlayer implements Runnable {
     public void removeAll(Collection<AudioHandle> handles) {
         if (handles == null)
             return;
-        synchronized (queued) {
-            queued.removeAll(handles);
-            removed.addAll(handles);
-        }
+        for (AudioHandle h : handles)
+            post(CommandRing.REMOVE, h, 0);
     }
 
     /**
      * Clear all playing/pending sound effects
      */
     public void clear() {
-        synchronized (queued) {
-            removed.addAll(queued);
-            queued.clear();
+        post(CommandRing.CLEAR, null, 0);
+    }
+
+    /**
+     * Change the volume of a queued sound
+     * @param handle Audio handle
+     * @param volume Volume (0 to 1)
+     */
+    public void setVolume(AudioHandle handle, double volume) {
+        if (!post(CommandRing.VOLUME, handle, volume))
+            handle.applyVolume(volume);
+    }
+
+    /**
+     * Move the playback position of a queued sound
+     * @param handle Audio handle
+     * @param time Time in seconds
+     */
+    public void seek(AudioHandle handle, double time) {
+        if (!post(CommandRing.SEEK, handle, time))
+            handle.applyTime(time);
+    }
+
+    /**
+     * Post a command for the audio thread
+     * This never waits on the audio thread, except to retry if the command ring is full
+     * @return True if posted
+     */
+    private boolean post(int type, AudioHandle handle, double value) {
+        while (!commands.offer(type, handle, value)) {
+            if (!running)
+                return false;
+            Thread.yield();
+        }
+        if (idle)
+            LockSupport.unpark(thread);
+        return true;
+    }
+
+    /**
+     * Apply a command on the audio thread
+     */
+    private void onCommand(int type, AudioHandle handle, double value) {
+        switch (type) {
+            case CommandRing.ADD:
+                queued.add(handle);
+                break;
+            case CommandRing.REMOVE:
+                queued.remove(handle);
+                removed.add(handle);
+                break;
+            case CommandRing.CLEAR:
+                // addAll() would copy the list to an array
+                for (int i = 0; i < queued.size(); i++)
+                    removed.add(queued.get(i));
+                queued.clear();
+                break;
+            case CommandRing.VOLUME:
+                handle.applyVolume(value);
+                break;
+            case CommandRing.SEEK:
+                handle.applyTime(value);
+                break;
         }
     }
 
@@ -185,115 +480,172 @@ public class AudioPlayer implements Runnable {
         return System.nanoTime() / 1_000_000L;
     }
 
+    /**
+     * Fire callbacks for watched handles that have moved since the last poll
+     * Runs on the UI thread so the audio thread never has to post anything
+     */
+    private void dispatchCallbacks() {
+        for (Iterator<AudioHandle> it = watched.iterator(); it.hasNext(); ) {
+            AudioHandle h = it.next();
+            int frame = h.publishedFrame;
+            if (frame == h.dispatchedFrame)
+                continue;
+            h.dispatchedFrame = frame;
+            boolean finished = frame >= h.wav.numFrames;
+            if (finished)
+                it.remove();
+            if (h.callback != null) {
+                if (finished)
+                    h.callback.onPlaybackFinished();
+                else
+                    h.callback.onPlayback(h.wav.getTime(frame), frame);
+            }
+        }
+    }
+
+    /**
+     * Open the output line with a given period size and allocate the mix buffers
+     * @param periodFrames Period size in frames
+     * @throws LineUnavailableException If the line fails to open
+     */
+    private void openLine(int periodFrames) throws LineUnavailableException {
+        int periodBytes = periodFrames * this.channels * 2;
+        speaker.open(this.format, periodBytes * params.periodCount);
+        this.lineOrigin = this.renderFrame;
+        this.lineFrames = 0;
+
+        this.bufSizeFrames = periodFrames;
+        this.bufSizeBytes = periodBytes;
+        this.data = new byte[periodBytes];
+        this.bus.ensureSize(this.channels, periodFrames);
+        this.bufFrac = new double[periodFrames];
+        for (int i = 0; i < periodFrames; i++)
+            bufFrac[i] = (double) i / periodFrames;
+    }
+
+    /**
+     * Reopen the output line with a larger period after repeated underruns
+     * @return True if the period was changed
+     */
+    private boolean growPeriod() {
+        int period = this.bufSizeFrames;
+        int newPeriod = Math.min(period * 2, params.maxPeriodFrames);
+        if (newPeriod <= period)
+            return false;
+        speaker.stop();
+        speaker.flush();
+        speaker.close();
+        try {
+            openLine(newPeriod);
+        } catch (LineUnavailableException e) {
+            Log.e("Failed to reopen output line with a period of " + newPeriod + " frames", e);
+            try {
+                openLine(period);
+            } catch (LineUnavailableException e2) {
+                Log.e("Failed to reopen output line", e2);
+                running = false;
+                return false;
+            }
+        }
+        speaker.start();
+        Log.w("Output underruns - period increased to " + this.bufSizeFrames + " frames ("
+                + Math.round(getLatency() * 1000) + " ms latency)");
+        return true;
+    }
+
+    /**
+     * Record an underrun and schedule growing the period if they keep happening
+     * @param now Current time in nanoseconds
+     */
+    private void onUnderrun(long now) {
+        underruns++;
+        if (now - adaptStart > params.adaptWindow * 1e9) {
+            adaptStart = now;
+            recentUnderruns = 0;
+        }
+        if (++recentUnderruns >= params.adaptUnderruns) {
+            recentUnderruns = 0;
+            growPending = params.maxPeriodFrames > this.bufSizeFrames;
+        }
+    }
+
+    /**
+     * Stop the output line and park the audio thread until a command is posted
+     */
+    private void goIdle() {
+        speaker.drain();
+        speaker.stop();
+        idle = true;
+        while (running && !commands.hasPending())
+            LockSupport.park(this);
+        idle = false;
+        speaker.start();
+    }
+
     @Override
     public void run() {
         try {
             speaker.start();
 
-            byte[] data = new byte[this.bufSizeBytes];
-            double[][] wav = new double[this.channels][this.bufSizeFrames];
-            while (running) {
-
-                // No sounds to play (and no need to check)
-                // Sleep and play nothing
-                if (sleeping) {
-                    speaker.write(data, 0, this.bufSizeBytes);
-                    continue;
-                }
+            // Time the previous write returned (0 = line not primed)
+            long lastWrite = 0;
 
-                long curTime = curTime();
+            // Number of silent periods written in a row
+            int silentPeriods = 0;
 
-                // Scan samples
-                final List<AudioHandle> played;
-                synchronized (queued) {
+            while (running) {
 
-                    // Save handles for callbacks later
-                    played = new ArrayList<>(queued);
+                // Underruns keep happening - trade latency for stability
+                if (growPending) {
+                    growPending = false;
+                    if (growPeriod())
+                        lastWrite = 0;
+                }
 
-                    // Remove samples that are finished playing
-                    for (int i = 0, j = 0; i < queued.size(); i++, j++) {
-                        AudioHandle s = queued.get(i);
-                        if (s.time > curTime)
-                            played.remove(j--);
-                        else if (s.isFinished())
-                            queued.remove(i--);
-                    }
+                // Pick up queued/removed sounds and volume changes
+                if (commands.drain(commandHandler) > 0)
+                    sleeping = false;
 
-                    // Set volume to zero on samples that are still playing but have been marked for removal
-                    // This ensures there's no clipping when abruptly ending a sample
-                    for (AudioHandle h : removed) {
-                        played.add(h);
-                        h.setVolumeCalculator(null);
-                        h.setVolume(0);
+                int period = this.bufSizeFrames;
+                long periodNanos = period * 1_000_000_000L / this.sampleRate;
+                if (sleeping) {
+                    // Nothing has played for a while - let the line go idle
+                    if (params.idleTimeout >= 0 && silentPeriods * periodNanos >= params.idleTimeout * 1e9) {
+                        goIdle();
+                        silentPeriods = 0;
+                        lastWrite = 0;
+                        continue;
                     }
-
-                    if (queued.isEmpty() && removed.isEmpty()) {
-                        // No samples to play - sleep
-                        Arrays.fill(data, (byte) 0);
-                        sleeping = true;
-                    } else {
-                        // Clear the WAV buffer
-                        for (int c = 0; c < this.channels; c++)
-                            Arrays.fill(wav[c], 0);
-
-                        // Mix sounds in the queue
-                        for (AudioHandle s : played) {
-                            final double dstVol = s.getVolume();
-                            final boolean volChange = dstVol != s.srcVol;
-                            for (int f = 0; f < this.bufSizeFrames; f++) {
-                                if (s.isFinished())
-                                    break;
-                                double vol = s.srcVol;
-                                if (volChange)
-                                    vol = (s.srcVol * (1 - this.bufFrac[f])) + (dstVol * this.bufFrac[f]);
-                                for (int c = 0; c < this.channels; c++) {
-                                    double amp = s.wav.samples[c][s.frame];
-                                    wav[c][f] += amp * vol;
-                                }
-                                s.incrementFrame();
-                            }
-                            s.srcVol = dstVol;
-                        }
-
-                        // Convert to byte data
-                        int d = 0;
-                        for (int f = 0; f < this.bufSizeFrames; f++) {
-                            for (int c = 0; c < this.channels; c++) {
-                                double s = wav[c][f];
-                                if (s > 1) s = 1;
-                                else if (s < -1) s = -1;
-                                if (s < 0) s += 2;
-                                int sh = (int) (s * 32768);
-                                int b2 = sh >> 8;
-                                int b1 = sh & 0xFF;
-                                if (b1 > 127) b1 -= 256;
-                                if (b2 > 127) b2 -= 256;
-                                data[d++] = (byte) b1;
-                                data[d++] = (byte) b2;
-                            }
-                        }
-
-                        // Mark removed samples as finished and clear removal buffer
-                        for (AudioHandle h : removed)
-                            h.finish();
-                        removed.clear();
+                    silentPeriods++;
+                } else {
+                    // Render the next period (this fills silence once there's nothing left to play)
+                    long mixStart = System.nanoTime();
+                    render(this.data);
+                    silentPeriods = 0;
+
+                    // Only real-time sinks have a deadline to protect
+                    if (speaker.isRealTime()) {
+                        long mixEnd = System.nanoTime();
+                        voices.onMixed(mixEnd - mixStart, periodNanos, mixEnd);
                     }
                 }
+                this.renderFrame += period;
 
-                // Fire callbacks before writing data, since that method blocks until writing is finished
-                SwingUtilities.invokeLater(() -> {
-                    for (AudioHandle s : played) {
-                        if (s.callback != null) {
-                            if (s.isFinished())
-                                s.callback.onPlaybackFinished();
-                            else
-                                s.callback.onPlayback(s.getTime(), s.getFrame());
-                        }
-                    }
-                });
+                // The line ran dry if everything written has already played,
+                // or if rendering took longer than the audio buffered in the line
+                long now = System.nanoTime();
+                if (lastWrite != 0 && speaker.isRealTime() && (this.lineFrames - speaker.getFramePosition() <= 0
+                        || now - lastWrite > periodNanos * params.periodCount))
+                    onUnderrun(now);
 
                 // Send data to sound player
-                speaker.write(data, 0, this.bufSizeBytes);
+                speaker.write(this.data, 0, this.bufSizeBytes);
+                this.lineFrames += period;
+
+                // A write that blocks longer than the whole line buffer means the device stalled
+                lastWrite = System.nanoTime();
+                if (speaker.isRealTime() && lastWrite - now > periodNanos * (params.periodCount + 1))
+                    onUnderrun(lastWrite);
             }
 
             speaker.drain();
@@ -302,4 +654,107 @@ public class AudioPlayer implements Runnable {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Mix the next buffer of audio
+     * This runs once per buffer on the audio thread, so it must not allocate
+     * (only indexed loops and preallocated lists are used)
+     * @param data Output PCM data
+     */
+    private void render(byte[] data) {
+        final int frames = this.bufSizeFrames;
+        final long bufStart = this.renderFrame;
+        final long bufEnd = bufStart + frames;
+
+        // Steal voices over the limit - they fade out with the removed handles
+        voices.enforce(queued, removed, bufEnd);
+        final boolean linear = voices.isLinear();
+
+        // Save handles for callbacks later
+        played.clear();
+        for (int i = 0; i < queued.size(); i++)
+            played.add(queued.get(i));
+
+        // Remove samples that are finished playing
+        for (int i = 0, j = 0; i < queued.size(); i++, j++) {
+            AudioHandle s = queued.get(i);
+            if (s.startFrame >= bufEnd)
+                played.remove(j--);
+            else if (s.isFinished()) {
+                queued.remove(i--);
+                s.player = null;
+            }
+        }
+
+        // Set volume to zero on samples that are still playing but have been marked for removal
+        // This ensures there's no clipping when abruptly ending a sample
+        for (int i = 0; i < removed.size(); i++) {
+            AudioHandle h = removed.get(i);
+            played.add(h);
+            h.volumeCalc = null;
+            h.applyVolume(0);
+        }
+
+        // Bus gains are calculated once per buffer, however many voices share the bus
+        for (int i = 0; i < played.size(); i++) {
+            AudioBus b = played.get(i).bus;
+            if (b != null)
+                b.update(bufStart, frames, this.bufFrac);
+        }
+
+        // Keep rendering until the tail of the audio has made it through the limiter
+        if (queued.isEmpty() && removed.isEmpty() && (this.limiter == null || this.limiter.isSilent())) {
+            // No samples to play - sleep
+            Arrays.fill(data, (byte) 0);
+            sleeping = true;
+        } else {
+            // Mix sounds in the queue - spread across the mix threads when there are enough of them
+            this.bus.clear(frames);
+            if (this.pool != null && played.size() >= params.parallelVoices)
+                this.pool.mix(played, this.bus, frames, bufStart, this.bufFrac, linear);
+            else {
+                for (int i = 0; i < played.size(); i++)
+                    this.bus.mix(played.get(i), frames, bufStart, this.bufFrac, linear);
+            }
+
+            // Bring peaks under the ceiling instead of clipping them
+            double[][] wav = this.bus.mix;
+            if (this.limiter != null)
+                this.limiter.process(wav, frames);
+
+            // Convert to byte data
+            int d = 0;
+            for (int f = 0; f < frames; f++) {
+                for (int c = 0; c < this.channels; c++) {
+                    double s = wav[c][f];
+                    if (s > 1) s = 1;
+                    else if (s < -1) s = -1;
+                    if (s < 0) s += 2;
+                    int sh = (int) (s * 32768);
+                    int b2 = sh >> 8;
+                    int b1 = sh & 0xFF;
+                    if (b1 > 127) b1 -= 256;
+                    if (b2 > 127) b2 -= 256;
+                    data[d++] = (byte) b1;
+                    data[d++] = (byte) b2;
+                }
+            }
+
+            // Mark removed samples as finished and clear removal buffer
+            for (int i = 0; i < removed.size(); i++) {
+                AudioHandle h = removed.get(i);
+                h.finish();
+                h.player = null;
+            }
+            removed.clear();
+        }
+
+        // Publish positions for the callback timer and frame clock lookups
+        for (int i = 0; i < played.size(); i++) {
+            AudioHandle h = played.get(i);
+            h.publishedFrame = h.frame;
+            if (!h.isFinished())
+                h.outputOffset = bufEnd - h.toOutputFrames(h.pos);
+        }
+    }
 }
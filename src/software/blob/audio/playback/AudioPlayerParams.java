@@ -0,0 +1,97 @@
+package software.blob.audio.playback;
+
+/**
+ * Output settings for the {@link AudioPlayer}
+ * Output latency is roughly the period size multiplied by the period count
+ */
+public class AudioPlayerParams {
+
+    // Output sample rate
+    public int sampleRate = 44100;
+
+    // Number of output channels
+    public int channels = 2;
+
+    // Number of frames rendered and written to the line at a time
+    public int periodFrames = 512;
+
+    // Number of periods the output line buffers
+    public int periodCount = 2;
+
+    // Rate that playback callbacks are dispatched on the UI thread (per second)
+    public int callbackRate = 60;
+
+    // Largest period the player may grow to when underruns repeat
+    // Set this to the period size (or lower) to keep the period fixed
+    public int maxPeriodFrames = 4096;
+
+    // Number of underruns within the adapt window that make the period grow
+    public int adaptUnderruns = 3;
+
+    // Adapt window in seconds
+    public double adaptWindow = 2;
+
+    // Maximum number of voices mixed at once (0 for no limit)
+    // Voices over the limit are stolen; protected handles don't count
+    public int maxVoices = 128;
+
+    // Fraction of the period the mix may take before the overload governor sheds work
+    public double overloadLoad = 0.75;
+
+    // Fraction of the period below which the governor restores shed work
+    public double recoverLoad = 0.4;
+
+    // Number of extra threads that mix voices alongside the audio thread (0 to mix on one thread)
+    public int mixThreads = Math.max(0, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+
+    // Number of voices needed before mixing is spread across the mix threads
+    public int parallelVoices = 16;
+
+    // Highest amplitude the master limiter lets through (0 to hard clip at full scale instead)
+    public double limiterCeiling = 0.98;
+
+    // Seconds the limiter looks ahead for peaks (added to the output latency)
+    public double limiterLookahead = 0.002;
+
+    // Seconds for the limiter to recover after a peak
+    public double limiterRelease = 0.1;
+
+    // Seconds of silence before the output line is stopped (negative to never stop)
+    public double idleTimeout = 1;
+
+    // Where mixed audio is written (null to play through the default speaker line)
+    public AudioSink sink;
+
+    public AudioPlayerParams() {
+    }
+
+    /**
+     * Parameters matching the original frame-rate based buffer size
+     * @param sampleRate Output sample rate
+     * @param fps Number of periods rendered per second
+     * @param channels Number of output channels
+     */
+    public AudioPlayerParams(int sampleRate, int fps, int channels) {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.callbackRate = fps;
+        this.periodFrames = sampleRate / fps;
+    }
+
+    /**
+     * Check that all the parameters are acceptable
+     * @return True if valid
+     */
+    public boolean isValid() {
+        return sampleRate > 0 && channels > 0 && periodFrames > 0 && periodCount > 0 && callbackRate > 0
+                && maxVoices >= 0 && recoverLoad < overloadLoad && mixThreads >= 0;
+    }
+
+    /**
+     * Get the output latency these parameters produce
+     * @return Latency in seconds
+     */
+    public double getLatency() {
+        return (double) periodFrames * periodCount / sampleRate;
+    }
+}
@@ -0,0 +1,68 @@
+package software.blob.audio.playback;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Destination for the PCM data mixed by the {@link AudioPlayer}
+ * Only the audio thread writes to a sink, so implementations don't need to be thread-safe
+ * aside from {@link #getFramePosition()}, which any thread may call
+ */
+public interface AudioSink {
+
+    /**
+     * Open the sink
+     * @param format Format of the data that will be written (16-bit signed little-endian PCM)
+     * @param bufferSize Requested buffer size in bytes
+     * @throws LineUnavailableException If the sink can't be opened
+     */
+    void open(AudioFormat format, int bufferSize) throws LineUnavailableException;
+
+    /**
+     * Start consuming written data
+     */
+    void start();
+
+    /**
+     * Stop consuming written data (buffered data is kept)
+     */
+    void stop();
+
+    /**
+     * Block until all buffered data has been consumed
+     */
+    void drain();
+
+    /**
+     * Discard buffered data
+     */
+    void flush();
+
+    /**
+     * Close the sink and release its resources
+     */
+    void close();
+
+    /**
+     * Write PCM data, blocking until there's room for it
+     * @param data PCM data
+     * @param offset Offset within the data array
+     * @param length Number of bytes to write
+     * @return Number of bytes written
+     */
+    int write(byte[] data, int offset, int length);
+
+    /**
+     * Get the number of frames consumed since the sink was opened
+     * @return Frame position
+     */
+    long getFramePosition();
+
+    /**
+     * Check if this sink consumes data at the format's sample rate
+     * Sinks that don't (i.e. files) can be written as fast as audio is mixed,
+     * and never underrun
+     * @return True if real-time
+     */
+    boolean isRealTime();
+}
@@ -0,0 +1,125 @@
+package software.blob.audio.playback;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of player commands
+ * Any number of threads may post commands; only the audio thread drains them
+ * Command slots are preallocated and reused, so posting doesn't allocate
+ */
+final class CommandRing {
+
+    // Command types
+    static final int ADD = 0;
+    static final int REMOVE = 1;
+    static final int CLEAR = 2;
+    static final int VOLUME = 3;
+    static final int SEEK = 4;
+
+    /**
+     * Receives commands as they're drained
+     */
+    interface Handler {
+
+        /**
+         * Process a single command
+         * @param type Command type
+         * @param handle Target audio handle (null for {@link #CLEAR})
+         * @param value Command value (volume or time in seconds)
+         */
+        void onCommand(int type, AudioHandle handle, double value);
+    }
+
+    private static final class Command {
+        int type;
+        AudioHandle handle;
+        double value;
+    }
+
+    private final Command[] slots;
+    private final int mask;
+
+    // Each slot's sequence tells producers and the consumer whose turn it is:
+    // seq == pos is free to write, seq == pos + 1 is ready to read
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+
+    // Only touched by the consumer
+    private long head;
+
+    /**
+     * @param capacity Number of command slots (rounded up to a power of 2)
+     */
+    CommandRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new Command[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            this.slots[i] = new Command();
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Post a command
+     * @param type Command type
+     * @param handle Target audio handle
+     * @param value Command value
+     * @return True if posted, false if the ring is full
+     */
+    boolean offer(int type, AudioHandle handle, double value) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                // Claim the slot, fill it, then publish it to the consumer
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    Command cmd = slots[index];
+                    cmd.type = type;
+                    cmd.handle = handle;
+                    cmd.value = value;
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0)
+                return false;
+            else
+                pos = tail.get();
+        }
+    }
+
+    /**
+     * Check if there are commands waiting (consumer only)
+     * @return True if at least one command can be drained
+     */
+    boolean hasPending() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+
+    /**
+     * Process all published commands in order (consumer only)
+     * @param handler Command handler
+     * @return Number of commands processed
+     */
+    int drain(Handler handler) {
+        int count = 0;
+        while (true) {
+            int index = (int) head & mask;
+            if (sequences.get(index) != head + 1)
+                return count;
+            Command cmd = slots[index];
+            AudioHandle handle = cmd.handle;
+            cmd.handle = null;
+            handler.onCommand(cmd.type, handle, cmd.value);
+
+            // Hand the slot back to producers for the next lap
+            sequences.lazySet(index, head + slots.length);
+            head++;
+            count++;
+        }
+    }
+}
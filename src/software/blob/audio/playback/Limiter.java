@@ -0,0 +1,145 @@
+package software.blob.audio.playback;
+
+import java.util.Arrays;
+
+/**
+ * Look-ahead peak limiter for the master output
+ *
+ * The input is delayed by the look-ahead so the gain can start coming down before a peak arrives.
+ * The required gain (ceiling / peak across channels) goes through a sliding minimum over the
+ * look-ahead window, an exponential release, and a moving average over the same window.
+ * Every gain value averaged for a frame is at most the gain that frame requires, so the output
+ * never exceeds the ceiling, and the averaging turns gain changes into smooth ramps.
+ * All state is preallocated, so processing doesn't allocate.
+ */
+class Limiter {
+
+    private final int channels;
+    private final int window;
+    private final double ceiling;
+    private final double release;
+
+    // Input delay line [channel][frame]
+    private final double[][] delay;
+    private int delayPos;
+
+    // Sliding minimum of the required gain (monotonic queue of frame numbers and gains)
+    private final long[] minFrames;
+    private final double[] minGains;
+    private int minHead, minSize;
+
+    // Released gain envelope and the moving average over it
+    private final double[] envelope;
+    private double envelopeSum;
+    private int envelopeBelow;
+    private double gain = 1;
+
+    private long frame;
+
+    // Frames since the last non-silent input
+    private int silentFrames;
+
+    /**
+     * @param channels Number of channels
+     * @param sampleRate Sample rate
+     * @param lookahead Look-ahead in seconds (this is also the latency added to the output)
+     * @param ceiling Maximum output amplitude
+     * @param release Seconds for the gain to recover most of the way after a peak
+     */
+    Limiter(int channels, int sampleRate, double lookahead, double ceiling, double release) {
+        this.channels = channels;
+        this.window = Math.max(1, (int) Math.round(lookahead * sampleRate)) + 1;
+        this.ceiling = ceiling;
+        this.release = 1 - Math.exp(-1 / Math.max(1, release * sampleRate));
+        this.delay = new double[channels][this.window - 1];
+        this.minFrames = new long[this.window];
+        this.minGains = new double[this.window];
+        this.envelope = new double[this.window];
+        Arrays.fill(this.envelope, 1);
+        this.envelopeSum = this.window;
+        this.silentFrames = this.window;
+    }
+
+    /**
+     * Get the number of frames the output is delayed by
+     * @return Latency in frames
+     */
+    int getLatency() {
+        return this.window - 1;
+    }
+
+    /**
+     * Check if the delay line only holds silence
+     * @return True if processing more silence would only output silence
+     */
+    boolean isSilent() {
+        return this.silentFrames >= this.window;
+    }
+
+    /**
+     * Limit a buffer in place
+     * @param buf Samples [channel][frame]
+     * @param frames Number of frames
+     */
+    void process(double[][] buf, int frames) {
+        final int lag = this.window - 1;
+        for (int f = 0; f < frames; f++) {
+            // Gain this frame needs
+            double peak = 0;
+            for (int c = 0; c < this.channels; c++) {
+                double s = buf[c][f];
+                if (s < 0)
+                    s = -s;
+                if (s > peak)
+                    peak = s;
+            }
+            double required = peak > this.ceiling ? this.ceiling / peak : 1;
+            this.silentFrames = peak == 0 ? Math.min(this.silentFrames + 1, this.window) : 0;
+
+            // Sliding minimum over the look-ahead window
+            long n = this.frame++;
+            if (this.minSize > 0 && this.minFrames[this.minHead] <= n - this.window) {
+                this.minHead = (this.minHead + 1) % this.window;
+                this.minSize--;
+            }
+            while (this.minSize > 0 && this.minGains[(this.minHead + this.minSize - 1) % this.window] >= required)
+                this.minSize--;
+            int tail = (this.minHead + this.minSize) % this.window;
+            this.minFrames[tail] = n;
+            this.minGains[tail] = required;
+            this.minSize++;
+            double min = this.minGains[this.minHead];
+
+            // Hold the minimum and release towards unity
+            this.gain = Math.min(min, this.gain + (1 - this.gain) * this.release);
+            if (this.gain > 1 - 1e-6)
+                this.gain = 1;
+
+            // Moving average of the envelope
+            int e = (int) (n % this.window);
+            double old = this.envelope[e];
+            if (old < 1)
+                this.envelopeBelow--;
+            if (this.gain < 1)
+                this.envelopeBelow++;
+            this.envelope[e] = this.gain;
+            this.envelopeSum += this.gain - old;
+            double g;
+            if (this.envelopeBelow == 0) {
+                // Exactly unity - also cancels drift in the running sum
+                this.envelopeSum = this.window;
+                g = 1;
+            } else
+                g = Math.min(1, this.envelopeSum / this.window);
+
+            // Output the delayed frame
+            int d = this.delayPos;
+            for (int c = 0; c < this.channels; c++) {
+                double in = buf[c][f];
+                buf[c][f] = this.delay[c][d] * g;
+                this.delay[c][d] = in;
+            }
+            this.delayPos = (d + 1) % lag;
+        }
+    }
+}
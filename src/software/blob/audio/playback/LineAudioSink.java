@@ -0,0 +1,85 @@
+package software.blob.audio.playback;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Sink that plays audio through a JavaSound line
+ */
+public class LineAudioSink implements AudioSink {
+
+    private SourceDataLine line;
+
+    /**
+     * Play through the default speaker line
+     */
+    public LineAudioSink() {
+        this(null);
+    }
+
+    /**
+     * @param line Output line (null to use the default speaker line)
+     *             The line is opened by the sink
+     */
+    public LineAudioSink(SourceDataLine line) {
+        this.line = line;
+    }
+
+    /**
+     * Get the line this sink writes to
+     * @return Output line or null if the default line hasn't been opened yet
+     */
+    public SourceDataLine getLine() {
+        return this.line;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+        if (this.line == null)
+            this.line = (SourceDataLine) AudioSystem.getLine(new DataLine.Info(SourceDataLine.class, format));
+        this.line.open(format, bufferSize);
+    }
+
+    @Override
+    public void start() {
+        this.line.start();
+    }
+
+    @Override
+    public void stop() {
+        this.line.stop();
+    }
+
+    @Override
+    public void drain() {
+        this.line.drain();
+    }
+
+    @Override
+    public void flush() {
+        this.line.flush();
+    }
+
+    @Override
+    public void close() {
+        this.line.close();
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length) {
+        return this.line.write(data, offset, length);
+    }
+
+    @Override
+    public long getFramePosition() {
+        return this.line.getLongFramePosition();
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
+    }
+}
@@ -0,0 +1,111 @@
+package software.blob.audio.playback;
+
+import java.util.Arrays;
+
+/**
+ * Private mix buffer for one mixing thread
+ * Voices are converted and summed into the bus a segment at a time
+ */
+class MixBus {
+
+    // Number of source frames a voice can convert from at a time
+    static final int WINDOW_SIZE = 4096;
+
+    // Mix buffer [channel][frame]
+    double[][] mix = new double[0][0];
+
+    // Converted samples for a voice and the source frames they're read from
+    private double[] conv = new double[0];
+    private final double[] window = new double[WINDOW_SIZE];
+
+    /**
+     * Make sure the bus can hold a period
+     * This allocates when the period grows, so the audio thread only calls it when opening the line
+     * @param channels Number of channels
+     * @param frames Period size in frames
+     */
+    void ensureSize(int channels, int frames) {
+        if (this.mix.length != channels || this.conv.length < frames) {
+            this.mix = new double[channels][frames];
+            this.conv = new double[frames];
+        }
+    }
+
+    /**
+     * Clear the start of the bus
+     * @param frames Number of frames to clear
+     */
+    void clear(int frames) {
+        for (double[] m : this.mix)
+            Arrays.fill(m, 0, frames, 0);
+    }
+
+    /**
+     * Add another bus to this one
+     * @param other Bus to add
+     * @param frames Number of frames to add
+     */
+    void add(MixBus other, int frames) {
+        for (int c = 0; c < this.mix.length; c++) {
+            double[] dst = this.mix[c], src = other.mix[c];
+            for (int f = 0; f < frames; f++)
+                dst[f] += src[f];
+        }
+    }
+
+    /**
+     * Mix a voice into the bus and advance it
+     * @param s Voice
+     * @param frames Period size in frames
+     * @param bufStart Output frame of the start of the period
+     * @param bufFrac Position of each frame within the period (0 to 1) for volume ramps
+     * @param linear True to resample with linear interpolation
+     */
+    void mix(AudioHandle s, int frames, long bufStart, double[] bufFrac, boolean linear) {
+        // Sounds scheduled on a frame within this buffer start part way through
+        final int offset = (int) Math.max(0, s.startFrame - bufStart);
+        if (offset >= frames)
+            return;
+        final double voiceSrc = s.srcVol;
+        final double voiceDst = s.getVolume();
+        s.srcVol = voiceDst;
+        s.linear = linear;
+
+        // The bus gain is folded into the voice's volume ramp, or applied per frame while it changes
+        final AudioBus bus = s.bus;
+        final double[] busGain = bus != null && !bus.constant ? bus.gain : null;
+        final double busLevel = bus != null && bus.constant ? bus.level : 1;
+        final double srcVol = voiceSrc * busLevel;
+        final double dstVol = voiceDst * busLevel;
+        final boolean volChange = dstVol != srcVol;
+
+        // Silent for the whole buffer - only move the position
+        if (s.isSilent() || busGain == null && srcVol == 0 && dstVol == 0) {
+            for (int f = offset; f < frames && !s.isFinished(); ) {
+                int n = s.getSegmentLength(frames - f, this.window.length);
+                s.advance(n);
+                f += n;
+            }
+            return;
+        }
+
+        // Convert a segment at a time (segments end at loop points)
+        for (int f = offset; f < frames && !s.isFinished(); ) {
+            int n = s.getSegmentLength(frames - f, this.window.length);
+            for (int c = 0; c < this.mix.length; c++) {
+                s.read(c, this.conv, n, this.window);
+                double[] dst = this.mix[c];
+                for (int k = 0; k < n; k++) {
+                    double vol = srcVol;
+                    if (volChange)
+                        vol = (srcVol * (1 - bufFrac[f + k])) + (dstVol * bufFrac[f + k]);
+                    if (busGain != null)
+                        vol *= busGain[f + k];
+                    dst[f + k] += this.conv[k] * vol;
+                }
+            }
+            s.advance(n);
+            f += n;
+        }
+    }
+}
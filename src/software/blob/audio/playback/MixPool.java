@@ -0,0 +1,172 @@
+package software.blob.audio.playback;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Worker threads that help the audio thread mix voices
+ *
+ * Each period the audio thread publishes the voice list and wakes the workers.
+ * Voices are claimed one at a time from a shared counter and mixed into the
+ * claiming thread's private bus; the audio thread mixes too and then sums the buses.
+ * The audio thread only ever waits for voices a worker has already claimed, so a
+ * worker that's slow to wake up never holds up the period - the audio thread just
+ * mixes its share, which is no worse than mixing on one thread.
+ */
+class MixPool {
+
+    private final Worker[] workers;
+    private final int channels;
+    private volatile boolean running = true;
+
+    // Voices being mixed this period (written by the audio thread before the claim counter)
+    private List<AudioHandle> voices;
+    private long bufStart;
+    private int frames;
+    private double[] bufFrac;
+    private boolean linear;
+
+    // Period number in the high 32 bits and the next voice index in the low 32 bits
+    private final AtomicLong claim = new AtomicLong();
+
+    // Period number in the high 32 bits and the number of voices in the low 32 bits
+    // Published before the claim counter, so a claim is only valid if both periods match
+    private volatile long limit;
+
+    // Number of threads that are claiming or mixing a voice
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private int period;
+
+    /**
+     * @param threads Number of worker threads
+     * @param channels Number of output channels
+     * @param priority Worker thread priority
+     */
+    MixPool(int threads, int channels, int priority) {
+        this.channels = channels;
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            Worker w = this.workers[i] = new Worker();
+            w.thread = new Thread(w, "AudioMixer-" + (i + 1));
+            w.thread.setDaemon(true);
+            w.thread.setPriority(priority);
+            w.thread.start();
+        }
+    }
+
+    int getThreadCount() {
+        return this.workers.length;
+    }
+
+    /**
+     * Mix voices across the audio thread and the workers (audio thread)
+     * @param voices Voices to mix
+     * @param bus Audio thread's bus - the worker buses are added to it
+     * @param frames Period size in frames
+     * @param bufStart Output frame of the start of the period
+     * @param bufFrac Position of each frame within the period
+     * @param linear True to resample with linear interpolation
+     */
+    void mix(List<AudioHandle> voices, MixBus bus, int frames, long bufStart, double[] bufFrac, boolean linear) {
+        int numVoices = voices.size();
+        this.voices = voices;
+        this.frames = frames;
+        this.bufStart = bufStart;
+        this.bufFrac = bufFrac;
+        this.linear = linear;
+        int period = ++this.period;
+
+        // Publish the period and wake the workers
+        this.limit = (long) period << 32 | numVoices;
+        this.claim.set((long) period << 32);
+        for (Worker w : this.workers)
+            LockSupport.unpark(w.thread);
+
+        // Mix on this thread until every voice is claimed
+        int i;
+        while ((i = (int) this.claim.getAndIncrement()) < numVoices)
+            bus.mix(voices.get(i), frames, bufStart, bufFrac, linear);
+
+        // Wait for voices the workers are still mixing
+        while (this.inFlight.get() != 0)
+            Thread.yield();
+
+        for (Worker w : this.workers) {
+            if (w.busPeriod == period)
+                bus.add(w.bus, frames);
+        }
+    }
+
+    /**
+     * Stop the worker threads
+     */
+    void dispose() {
+        this.running = false;
+        for (Worker w : this.workers)
+            LockSupport.unpark(w.thread);
+    }
+
+    private class Worker implements Runnable {
+
+        private final MixBus bus = new MixBus();
+        private Thread thread;
+
+        // Period the bus holds voices for
+        private volatile int busPeriod;
+
+        @Override
+        public void run() {
+            int lastPeriod = 0;
+            while (running) {
+                // Sleep until the next period is published
+                int period = (int) (claim.get() >>> 32);
+                if (period == lastPeriod) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                lastPeriod = period;
+
+                // Claim voices until there are none left
+                while (true) {
+                    inFlight.incrementAndGet();
+                    int index = claim(period);
+                    if (index < 0) {
+                        inFlight.decrementAndGet();
+                        break;
+                    }
+                    if (busPeriod != period) {
+                        bus.ensureSize(channels, frames);
+                        bus.clear(frames);
+                        busPeriod = period;
+                    }
+                    bus.mix(voices.get(index), frames, bufStart, bufFrac, linear);
+                    inFlight.decrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * Claim the next voice of a period
+         * The counter is only advanced while it still belongs to the period, so a worker
+         * that falls behind can't use up a voice index of the next period
+         * @param period Period the worker woke up for
+         * @return Voice index or -1 if the period is over or every voice is claimed
+         */
+        private int claim(int period) {
+            long l = limit;
+            if ((int) (l >>> 32) != period)
+                return -1;
+            while (true) {
+                long c = claim.get();
+                int index = (int) c;
+                if ((int) (c >>> 32) != period || index >= (int) l)
+                    return -1;
+                if (claim.compareAndSet(c, c + 1))
+                    return index;
+            }
+        }
+    }
+}
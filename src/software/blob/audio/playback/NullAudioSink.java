@@ -0,0 +1,148 @@
+package software.blob.audio.playback;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sink that discards everything written to it
+ * Free-running sinks accept data as fast as it's mixed (for benchmarks and tests),
+ * while clocked sinks pace writes like a sound card would
+ */
+public class NullAudioSink implements AudioSink {
+
+    private final boolean clocked;
+
+    private AudioFormat format;
+    private int frameSize;
+    private long bufferFrames;
+    private volatile boolean running;
+
+    // Frames written and consumed (clocked sinks consume at the sample rate while running)
+    private volatile long frames;
+    private volatile long consumedBase;
+    private volatile long startNanos;
+
+    private volatile long writes;
+    private volatile Thread writer;
+
+    /**
+     * @param clocked True to consume data at the format's sample rate
+     */
+    public NullAudioSink(boolean clocked) {
+        this.clocked = clocked;
+    }
+
+    /**
+     * Create a free-running sink
+     */
+    public NullAudioSink() {
+        this(false);
+    }
+
+    /**
+     * Get the number of writes so far
+     * @return Write count
+     */
+    public long getWriteCount() {
+        return this.writes;
+    }
+
+    /**
+     * Get the number of frames written so far
+     * @return Frame count
+     */
+    public long getFramesWritten() {
+        return this.frames;
+    }
+
+    /**
+     * Get the last thread that wrote to this sink
+     * @return Writer thread or null if nothing has been written
+     */
+    public Thread getWriterThread() {
+        return this.writer;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) {
+        this.format = format;
+        this.frameSize = format.getFrameSize();
+        this.bufferFrames = bufferSize / this.frameSize;
+        this.frames = this.consumedBase = 0;
+        this.running = false;
+    }
+
+    @Override
+    public void start() {
+        if (!this.running) {
+            this.startNanos = System.nanoTime();
+            this.running = true;
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (this.running) {
+            this.consumedBase = getFramePosition();
+            this.running = false;
+        }
+    }
+
+    @Override
+    public void drain() {
+        if (this.clocked && this.running)
+            waitForPosition(this.frames);
+    }
+
+    @Override
+    public void flush() {
+        this.frames = getFramePosition();
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length) {
+        this.writer = Thread.currentThread();
+        long end = this.frames + length / this.frameSize;
+
+        if (this.clocked && this.running) {
+            // Ran dry - consumption picks up again from here, like a sound card after an underrun
+            if (getFramePosition() >= this.frames) {
+                this.consumedBase = this.frames;
+                this.startNanos = System.nanoTime();
+            }
+
+            // Block until the buffer has room for this data
+            waitForPosition(end - this.bufferFrames);
+        }
+
+        this.frames = end;
+        this.writes++;
+        return length;
+    }
+
+    private void waitForPosition(long position) {
+        long remaining;
+        while ((remaining = position - getFramePosition()) > 0)
+            LockSupport.parkNanos((long) (remaining * 1e9 / this.format.getSampleRate()));
+    }
+
+    @Override
+    public long getFramePosition() {
+        if (!this.clocked)
+            return this.frames;
+        long consumed = this.consumedBase;
+        if (this.running)
+            consumed += (long) ((System.nanoTime() - this.startNanos) * 1e-9 * this.format.getSampleRate());
+        return Math.min(consumed, this.frames);
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return this.clocked;
+    }
+}
@@ -0,0 +1,153 @@
+package software.blob.audio.playback;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer single-consumer ring of multi-channel samples
+ * A render thread writes audio ahead of playback and the audio thread reads it back
+ * Positions are absolute frame counts since the start of the stream
+ */
+public class SampleRing {
+
+    // How long the producer sleeps between checks for free space
+    private static final long WAIT_NANOS = 2_000_000L;
+
+    private final double[][] samples;
+    private final int capacity;
+
+    // Frames published by the producer and released by the consumer
+    private volatile long writePos, readPos;
+
+    /**
+     * @param channels Number of channels
+     * @param capacity Number of frames the ring holds
+     */
+    public SampleRing(int channels, int capacity) {
+        this.samples = new double[channels][capacity];
+        this.capacity = capacity;
+    }
+
+    public int getChannels() {
+        return this.samples.length;
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get the position following the last published frame
+     * @return Write position
+     */
+    public long getWritePosition() {
+        return this.writePos;
+    }
+
+    /**
+     * Get the position the consumer has released up to
+     * @return Read position
+     */
+    public long getReadPosition() {
+        return this.readPos;
+    }
+
+    /**
+     * Get the number of published frames the consumer hasn't read yet
+     * @return Number of buffered frames
+     */
+    public int getBuffered() {
+        return (int) Math.max(0, this.writePos - this.readPos);
+    }
+
+    /**
+     * Get the number of frames the producer can write without overwriting unread frames
+     * @return Free space in frames
+     */
+    public int getFreeSpace() {
+        return this.capacity - getBuffered();
+    }
+
+    /* PRODUCER */
+
+    /**
+     * Block until a number of frames can be written
+     * @param frames Number of frames
+     * @param cancel Checked while waiting - the wait stops early once this returns true
+     * @return True if there's space, false if canceled
+     */
+    public boolean awaitSpace(int frames, Cancel cancel) {
+        frames = Math.min(frames, this.capacity);
+        while (getFreeSpace() < frames) {
+            if (cancel != null && cancel.isCanceled())
+                return false;
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Write and publish frames (producer only)
+     * @param block Samples [channel][frame]
+     * @param offset Offset within the block
+     * @param length Number of frames
+     */
+    public void write(double[][] block, int offset, int length) {
+        long pos = this.writePos;
+        int index = (int) (pos % this.capacity);
+        int first = Math.min(length, this.capacity - index);
+        for (int c = 0; c < this.samples.length; c++) {
+            double[] src = block[Math.min(c, block.length - 1)];
+            System.arraycopy(src, offset, this.samples[c], index, first);
+            System.arraycopy(src, offset + first, this.samples[c], 0, length - first);
+        }
+        this.writePos = pos + length;
+    }
+
+    /**
+     * Move the write position forward without writing anything (producer only)
+     * Used to catch up after the consumer has already played past a range
+     * @param pos New write position
+     */
+    public void skipTo(long pos) {
+        if (pos > this.writePos)
+            this.writePos = pos;
+    }
+
+    /* CONSUMER */
+
+    /**
+     * Read frames from one channel (consumer only)
+     * Frames that haven't been published yet are read as silence
+     * @param channel Channel number
+     * @param pos Stream position of the first frame
+     * @param out Output samples
+     * @param length Number of frames
+     * @return Number of frames that were available
+     */
+    public int read(int channel, long pos, double[] out, int length) {
+        int available = (int) Math.max(0, Math.min(length, this.writePos - pos));
+        double[] src = this.samples[Math.min(channel, this.samples.length - 1)];
+        int index = (int) (pos % this.capacity);
+        int first = Math.min(available, this.capacity - index);
+        System.arraycopy(src, index, out, 0, first);
+        System.arraycopy(src, 0, out, first, available - first);
+        for (int i = available; i < length; i++)
+            out[i] = 0;
+        return available;
+    }
+
+    /**
+     * Release frames up to a position so the producer can reuse their space (consumer only)
+     * @param pos Read position
+     */
+    public void release(long pos) {
+        this.readPos = pos;
+    }
+
+    /**
+     * Cancellation check for blocking producer calls
+     */
+    public interface Cancel {
+        boolean isCanceled();
+    }
+}
@@ -0,0 +1,62 @@
+package software.blob.audio.playback;
+
+import software.blob.audio.wave.WavData;
+
+/**
+ * Audio handle that plays samples rendered ahead of time into a {@link SampleRing}
+ * The handle's wav only provides the timeline (length, loop points and time codes);
+ * samples come from the ring in the order they're played, so the producer
+ * has to render the timeline in the same order (seek position first, then loop laps)
+ */
+public class StreamAudioHandle extends AudioHandle {
+
+    public final SampleRing ring;
+
+    // Stream position of the next frame to play (audio thread)
+    private long streamPos;
+
+    // Number of frames that weren't rendered in time
+    private volatile long missedFrames;
+
+    /**
+     * @param timeline Timeline wav at the output sample rate
+     * @param ring Ring holding samples for the output channel count
+     * @param channels Output channel count
+     */
+    StreamAudioHandle(WavData timeline, SampleRing ring, int sampleRate, int channels) {
+        super(timeline, sampleRate, channels);
+        this.ring = ring;
+    }
+
+    /**
+     * Get the number of frames played as silence because they weren't rendered in time
+     * @return Missed frame count
+     */
+    public long getMissedFrames() {
+        return this.missedFrames;
+    }
+
+    @Override
+    boolean isSilent() {
+        return false;
+    }
+
+    @Override
+    int getSegmentLength(int maxFrames, int windowSize) {
+        return super.getSegmentLength(maxFrames, Integer.MAX_VALUE);
+    }
+
+    @Override
+    void read(int channel, double[] out, int n, double[] window) {
+        int available = ring.read(channel, streamPos, out, n);
+        if (channel == 0 && available < n)
+            missedFrames += n - available;
+    }
+
+    @Override
+    void advance(int n) {
+        super.advance(n);
+        streamPos += n;
+        ring.release(streamPos);
+    }
+}
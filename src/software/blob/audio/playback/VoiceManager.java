@@ -0,0 +1,164 @@
+package software.blob.audio.playback;
+
+import java.util.List;
+
+/**
+ * Polyphony limit and overload governor for the {@link AudioPlayer}
+ * Voices over the limit are stolen (lowest priority, then quietest, then oldest first).
+ * The governor compares mix time against the period and sheds work before the line runs dry:
+ * first by switching voices to linear interpolation, then by lowering the voice limit.
+ * Owned by the audio thread, so none of this allocates.
+ */
+class VoiceManager {
+
+    // The governor never lowers the voice limit below this
+    private static final int MIN_VOICES = 4;
+
+    // Weight of the latest period in the smoothed load
+    private static final double LOAD_SMOOTHING = 0.25;
+
+    // Number of periods the governor waits for a change to take effect
+    private static final int SETTLE_PERIODS = 4;
+
+    // Volumes closer than this are treated as equal, so the older voice is stolen
+    private static final double VOLUME_STEP = 1d / 16;
+
+    private final AudioPlayerParams params;
+    private final int maxVoices;
+
+    // Current voice limit (lowered by the governor) and the number of voices
+    // that were due to play in the last buffer, before any were stolen
+    private volatile int voiceLimit;
+    private volatile int voiceCount;
+    private volatile long stolen;
+
+    // Mix time divided by the period, smoothed
+    private volatile double load;
+
+    // Resampled voices use linear interpolation instead of the sinc kernel
+    private volatile boolean linear;
+
+    // Time of the last governor change
+    private long lastChange;
+
+    VoiceManager(AudioPlayerParams params) {
+        this.params = params;
+        this.maxVoices = params.maxVoices > 0 ? params.maxVoices : Integer.MAX_VALUE;
+        this.voiceLimit = this.maxVoices;
+    }
+
+    int getVoiceLimit() {
+        return this.voiceLimit;
+    }
+
+    int getVoiceCount() {
+        return this.voiceCount;
+    }
+
+    long getStolenCount() {
+        return this.stolen;
+    }
+
+    double getLoad() {
+        return this.load;
+    }
+
+    boolean isLinear() {
+        return this.linear;
+    }
+
+    /**
+     * Steal voices until the number playing fits the voice limit
+     * Stolen voices are moved to the removed list, which fades them out over the next buffer
+     * @param queued Queued handles
+     * @param removed Handles being removed
+     * @param bufEnd Output frame following the buffer about to be mixed
+     */
+    void enforce(List<AudioHandle> queued, List<AudioHandle> removed, long bufEnd) {
+        int count = 0;
+        for (int i = 0; i < queued.size(); i++) {
+            if (isVoice(queued.get(i), bufEnd))
+                count++;
+        }
+        this.voiceCount = count;
+
+        for (int limit = this.voiceLimit; count > limit; count--) {
+            int victim = -1;
+            for (int i = 0; i < queued.size(); i++) {
+                AudioHandle h = queued.get(i);
+                if (isVoice(h, bufEnd) && (victim == -1 || steals(h, queued.get(victim))))
+                    victim = i;
+            }
+            if (victim == -1)
+                break;
+            removed.add(queued.remove(victim));
+            this.stolen++;
+        }
+    }
+
+    /**
+     * Check if a handle counts against the voice limit
+     */
+    private static boolean isVoice(AudioHandle h, long bufEnd) {
+        return h.priority != AudioHandle.PRIORITY_PROTECTED && h.startFrame < bufEnd && !h.isFinished();
+    }
+
+    /**
+     * Check if a voice should be stolen before another one
+     * Handles earlier in the queue are older, so ties keep the current pick
+     */
+    private static boolean steals(AudioHandle h, AudioHandle victim) {
+        if (h.priority != victim.priority)
+            return h.priority < victim.priority;
+        long vol = Math.round(getLevel(h) / VOLUME_STEP);
+        long victimVol = Math.round(getLevel(victim) / VOLUME_STEP);
+        return vol < victimVol;
+    }
+
+    private static double getLevel(AudioHandle h) {
+        AudioBus bus = h.bus;
+        return bus != null ? h.srcVol * bus.level : h.srcVol;
+    }
+
+    /**
+     * Update the governor after mixing a period
+     * @param mixNanos Time spent mixing
+     * @param periodNanos Duration of the period
+     * @param now Current time in nanoseconds
+     */
+    void onMixed(long mixNanos, long periodNanos, long now) {
+        double period = (double) mixNanos / periodNanos;
+        double load = this.load + (period - this.load) * LOAD_SMOOTHING;
+        this.load = load;
+
+        // A period that missed its deadline can't wait for the previous change to settle
+        if (period > 1)
+            load = period;
+        else if (now - this.lastChange < periodNanos * SETTLE_PERIODS)
+            return;
+
+        if (load > params.overloadLoad) {
+            // Cheapest fix first - then shed a quarter of the voices
+            if (!this.linear)
+                this.linear = true;
+            else if (this.voiceCount > MIN_VOICES && this.voiceLimit > MIN_VOICES)
+                this.voiceLimit = Math.max(MIN_VOICES, Math.min(this.voiceLimit, this.voiceCount) * 3 / 4);
+            else
+                return;
+            this.lastChange = now;
+        } else if (load < params.recoverLoad && now - this.lastChange > params.adaptWindow * 1e9) {
+            // Restore in the opposite order
+            if (this.voiceLimit < this.maxVoices) {
+                // Lift the limit altogether once it's no longer being reached
+                if (this.voiceCount < this.voiceLimit)
+                    this.voiceLimit = this.maxVoices;
+                else
+                    this.voiceLimit = (int) Math.min(this.maxVoices, this.voiceLimit + Math.max(1L, this.voiceLimit / 4));
+            } else if (this.linear)
+                this.linear = false;
+            else
+                return;
+            this.lastChange = now;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package software.blob.audio.playback;
+
+import software.blob.audio.wave.WavWriter;
+import software.blob.ui.util.Log;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Sink that records everything written to it into a 16-bit PCM wav file
+ * Data is written as fast as it's mixed; the header sizes are filled in when the sink is closed
+ */
+public class WavFileAudioSink implements AudioSink {
+
+    private final File file;
+    private WavWriter out;
+    private volatile long frames;
+    private boolean closed;
+
+    /**
+     * @param file Output wav file (overwritten)
+     */
+    public WavFileAudioSink(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+        if (this.out != null)
+            return;
+        if (this.closed)
+            throw new LineUnavailableException("Wav file sink is closed: " + this.file);
+        if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED
+                || format.getSampleSizeInBits() != 16 || format.isBigEndian())
+            throw new LineUnavailableException("Unsupported wav file sink format: " + format);
+        try {
+            this.out = new WavWriter(this.file, format.getChannels(), (int) format.getSampleRate(),
+                    WavWriter.Format.PCM_16);
+        } catch (IOException e) {
+            Log.e("Failed to open wav file: " + this.file, e);
+            throw new LineUnavailableException("Failed to open wav file: " + this.file);
+        }
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public void drain() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Finish the wav file
+     * Unlike a line, a file sink can't be reopened once it's closed
+     */
+    @Override
+    public void close() {
+        if (this.out == null)
+            return;
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            Log.e("Failed to finish wav file: " + this.file, e);
+        }
+        this.out = null;
+        this.closed = true;
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int length) {
+        if (this.out == null)
+            return 0;
+        try {
+            this.out.write(data, offset, length);
+            this.frames = this.out.getFramesWritten();
+            return length;
+        } catch (IOException e) {
+            Log.e("Failed to write wav file: " + this.file, e);
+            return 0;
+        }
+    }
+
+    @Override
+    public long getFramePosition() {
+        return this.frames;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+}
@@ -0,0 +1,51 @@
+package software.blob.audio.thread;
+
+import software.blob.audio.wave.MappedWavReader;
+import software.blob.audio.wave.WavData;
+
+import java.io.IOException;
+
+/**
+ * Decodes a range of frames from a mapped wav file into shared sample arrays
+ * Each task writes to a disjoint range of the destination arrays
+ */
+public class WavDecodeTask extends WavProcessorTask {
+
+    private final MappedWavReader reader;
+    private final double[][] samples;
+    private final int startFrame, numFrames;
+    private IOException error;
+
+    /**
+     * @param reader Mapped wav reader
+     * @param samples Destination arrays [channel][frame]
+     * @param startFrame First frame to decode (same index in the destination)
+     * @param numFrames Number of frames to decode
+     */
+    public WavDecodeTask(MappedWavReader reader, double[][] samples, int startFrame, int numFrames) {
+        this.reader = reader;
+        this.samples = samples;
+        this.startFrame = startFrame;
+        this.numFrames = numFrames;
+    }
+
+    /**
+     * Get the error thrown while decoding, if any
+     * @return Exception or null if decoding succeeded
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public WavData process() {
+        if (isCanceled())
+            return null;
+        try {
+            reader.readFrames(startFrame, samples, startFrame, numFrames);
+        } catch (IOException e) {
+            error = e;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,318 @@
+package software.blob.audio.thread;
+
+import software.blob.audio.thread.callback.TaskCallback;
+import software.blob.audio.wave.WavData;
+import software.blob.ui.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Application-wide pool of threads that wav processing jobs are run on
+ *
+ * A job is a batch of {@link WavProcessorTask}s submitted at a priority. Idle threads take the next
+ * task from the highest priority that has work, rotating between the jobs at that priority so
+ * concurrent jobs share the threads fairly. A thread waiting on a job runs that job's remaining
+ * tasks itself, so jobs can be awaited from inside other tasks without tying up the pool.
+ */
+public class WavExecutor {
+
+    /**
+     * Job priorities, highest first
+     */
+    public enum Priority {
+        INTERACTIVE, // Previews and anything the user is waiting on
+        PLAYBACK,    // Rendering for playback
+        EXPORT,      // Rendering to a file
+        BACKGROUND   // Instrument generation and analysis
+    }
+
+    private static WavExecutor instance;
+
+    /**
+     * Get the shared executor
+     * @return Executor with a thread per core
+     */
+    public static synchronized WavExecutor get() {
+        if (instance == null)
+            instance = new WavExecutor(Runtime.getRuntime().availableProcessors());
+        return instance;
+    }
+
+    private final int numThreads;
+
+    // Jobs with tasks that haven't been started, by priority, and the next job to take from
+    private final Object lock = new Object();
+    private final List<List<Job>> queues = new ArrayList<>();
+    private final int[] turns = new int[Priority.values().length];
+
+    private WavExecutor(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+        for (int i = 0; i < Priority.values().length; i++)
+            this.queues.add(new ArrayList<>());
+        for (int i = 0; i < this.numThreads; i++) {
+            Thread thr = new Thread(this::work, "WavExecutor-" + (i + 1));
+            thr.setDaemon(true);
+            thr.start();
+        }
+    }
+
+    /**
+     * Get the number of threads in the pool
+     * @return Thread count
+     */
+    public int getNumThreads() {
+        return this.numThreads;
+    }
+
+    /**
+     * Submit a job without waiting for it
+     * @param priority Priority
+     * @param tasks Tasks to execute
+     * @param maxThreads Maximum number of tasks from this job to run at once
+     * @param callback Task callback (optional) - progress is reported as tasks finish and
+     *                 {@link TaskCallback#onFinished(List)} is called from the thread that finishes the job
+     * @return Job
+     */
+    public Job submit(Priority priority, List<? extends WavProcessorTask> tasks, int maxThreads, TaskCallback callback) {
+        Job job = new Job(priority, tasks, maxThreads, callback);
+        if (tasks.isEmpty()) {
+            job.checkFinished();
+            return job;
+        }
+        synchronized (this.lock) {
+            this.queues.get(priority.ordinal()).add(job);
+            this.lock.notifyAll();
+        }
+        return job;
+    }
+
+    public Job submit(Priority priority, List<? extends WavProcessorTask> tasks, TaskCallback callback) {
+        return submit(priority, tasks, this.numThreads, callback);
+    }
+
+    private void work() {
+        while (true) {
+            Job job;
+            int index;
+            synchronized (this.lock) {
+                while ((job = next()) == null) {
+                    try {
+                        this.lock.wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                index = claim(job);
+            }
+            // Job was canceled or its last task was taken by another thread
+            if (index >= 0)
+                job.run(index);
+        }
+    }
+
+    /**
+     * Find the job to take the next task from (requires lock)
+     * @return Job or null if there's nothing to run
+     */
+    private Job next() {
+        for (int p = 0; p < this.queues.size(); p++) {
+            List<Job> queue = this.queues.get(p);
+            int size = queue.size();
+            for (int i = 0; i < size; i++) {
+                int idx = (this.turns[p] + i) % size;
+                Job job = queue.get(idx);
+                if (job.running < job.maxThreads) {
+                    this.turns[p] = idx + 1;
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Claim a job's next task (requires lock)
+     * @param job Job
+     * @return Task index or -1 if there are no tasks left to start
+     */
+    private int claim(Job job) {
+        if (job.canceled || job.next >= job.tasks.size() || job.running >= job.maxThreads)
+            return -1;
+        int index = job.next++;
+        job.running++;
+        if (job.next >= job.tasks.size())
+            this.queues.get(job.priority.ordinal()).remove(job);
+        return index;
+    }
+
+    /**
+     * A batch of tasks submitted to the executor
+     */
+    public class Job {
+
+        private final Priority priority;
+        private final List<? extends WavProcessorTask> tasks;
+        private final int maxThreads;
+        private final TaskCallback callback;
+        private final WavData[] results;
+
+        // Tasks started and running (guarded by the executor lock)
+        private int next, running;
+
+        // Tasks finished and state (guarded by this job)
+        private int done;
+        private volatile boolean canceled;
+        private boolean complete, finished;
+        private List<WavData> resultList;
+
+        private Job(Priority priority, List<? extends WavProcessorTask> tasks, int maxThreads, TaskCallback callback) {
+            this.priority = priority;
+            this.tasks = tasks;
+            this.maxThreads = Math.max(1, maxThreads);
+            this.callback = callback;
+            this.results = new WavData[tasks.size()];
+        }
+
+        public Priority getPriority() {
+            return this.priority;
+        }
+
+        /**
+         * Get the number of tasks that have finished
+         * @return Progress value
+         */
+        public synchronized int getProgress() {
+            return this.done;
+        }
+
+        /**
+         * Get the number of tasks in the job
+         * @return Maximum progress value
+         */
+        public int getMax() {
+            return this.tasks.size();
+        }
+
+        public boolean isCanceled() {
+            return this.canceled;
+        }
+
+        /**
+         * Check if the job has finished or been canceled and all of its running tasks have returned
+         * @return True if finished
+         */
+        public synchronized boolean isFinished() {
+            return this.finished;
+        }
+
+        /**
+         * Cancel the job
+         * Tasks that haven't started are skipped and running tasks are signalled to stop
+         */
+        public void cancel() {
+            synchronized (this) {
+                if (this.canceled || this.complete)
+                    return;
+                // Flagged and dequeued together so a worker can never pick up a canceled job
+                synchronized (lock) {
+                    this.canceled = true;
+                    queues.get(this.priority.ordinal()).remove(this);
+                    lock.notifyAll();
+                }
+            }
+            for (WavProcessorTask t : this.tasks)
+                t.cancel();
+            checkFinished();
+        }
+
+        /**
+         * Wait for the job to finish, running its remaining tasks on this thread
+         * @return Non-null results in task order (only those finished before a cancel)
+         */
+        public List<WavData> await() {
+            while (true) {
+                int index;
+                synchronized (lock) {
+                    index = claim(this);
+                }
+                if (index < 0)
+                    break;
+                run(index);
+            }
+            synchronized (this) {
+                while (!this.finished) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                return this.resultList != null ? this.resultList : getResults();
+            }
+        }
+
+        private void run(int index) {
+            if (index < 0)
+                return;
+            WavData result = null;
+            if (!this.canceled) {
+                try {
+                    result = this.tasks.get(index).process();
+                } catch (Throwable e) {
+                    Log.e("Task failed to complete", e);
+                }
+            }
+            synchronized (lock) {
+                this.running--;
+                lock.notifyAll();
+            }
+            synchronized (this) {
+                this.results[index] = result;
+                this.done++;
+                if (this.callback != null && !this.canceled && !this.callback.onProgress(this.done, this.tasks.size())) {
+                    // Progress callback has signalled to stop processing tasks
+                    synchronized (lock) {
+                        this.canceled = true;
+                        queues.get(this.priority.ordinal()).remove(this);
+                    }
+                    for (WavProcessorTask t : this.tasks)
+                        t.cancel();
+                }
+            }
+            checkFinished();
+        }
+
+        private void checkFinished() {
+            synchronized (this) {
+                if (this.complete)
+                    return;
+                int started;
+                synchronized (lock) {
+                    started = this.next;
+                }
+                if (this.done < started || (!this.canceled && started < this.tasks.size()))
+                    return;
+                this.complete = true;
+                this.resultList = getResults();
+            }
+
+            if (!this.canceled && this.callback != null)
+                this.callback.onFinished(this.resultList);
+
+            synchronized (this) {
+                this.finished = true;
+                notifyAll();
+            }
+        }
+
+        private List<WavData> getResults() {
+            List<WavData> list = new ArrayList<>();
+            for (WavData w : this.results) {
+                if (w != null)
+                    list.add(w);
+            }
+            return list;
+        }
+    }
+}
@@ -2,39 +2,29 @@ package software.blob.audio.thread;
 
 import software.blob.audio.thread.callback.TaskCallback;
 import software.blob.audio.wave.WavData;
-import software.blob.ui.util.Log;
 
-import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ThreadFactory;
+import java.util.List;
 
 /**
  * Service for processing wav data on multiple threads
+ * Tasks run on the shared {@link WavExecutor} at this service's priority
  */
 public class WavProcessorService {
 
-    private final int numThreads = Runtime.getRuntime().availableProcessors();
-    private final ExecutorService threadPool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
-        private int num = 1;
-        @Override
-        public Thread newThread(Runnable r) {
-            Thread thr = new Thread(r);
-            thr.setName("WavProcessorService-" + (num++));
-            thr.setDaemon(true);
-            return thr;
-        }
-    });
+    private final WavExecutor.Priority priority;
+    private final int numThreads;
 
-    private final boolean autoShutdown;
-
-    public WavProcessorService(boolean autoShutdown) {
-        this.autoShutdown = autoShutdown;
+    /**
+     * @param priority Priority of jobs executed by this service
+     * @param numThreads Maximum number of tasks from a job to run at once
+     */
+    public WavProcessorService(WavExecutor.Priority priority, int numThreads) {
+        this.priority = priority;
+        this.numThreads = Math.max(1, Math.min(numThreads, WavExecutor.get().getNumThreads()));
     }
 
-    public WavProcessorService() {
-        this(true);
+    public WavProcessorService(WavExecutor.Priority priority) {
+        this(priority, WavExecutor.get().getNumThreads());
     }
 
     /**
@@ -45,63 +35,19 @@ public class WavProcessorService {
         return numThreads;
     }
 
+    public WavExecutor.Priority getPriority() {
+        return priority;
+    }
+
     /**
      * Execute a set of wav processor tasks and wait for them all to finish
+     * The calling thread helps run the tasks while it waits
      * @param tasks Tasks to execute
      * @param callback Task callback (optional)
      * @return List of output wav containers
      */
     public List<WavData> execute(final List<? extends WavProcessorTask> tasks, final TaskCallback callback) {
-
-        // Setup progress listener
-        final int progMax = tasks.size();
-        final int[] prog = {0};
-        final boolean[] canceled = {false};
-        final WavProcessorTask.OnTaskFinished onTaskFinish = task -> {
-            synchronized (prog) {
-                prog[0]++;
-                if (callback != null && !callback.onProgress(prog[0], progMax)) {
-                    // Progress callback has signalled to stop processing tasks
-                    for (WavProcessorTask t : tasks)
-                        t.cancel();
-                    canceled[0] = true;
-                }
-            }
-        };
-
-        // Execute all tasks
-        Collection<Future<WavData>> waits = new LinkedList<>();
-        for (WavProcessorTask task : tasks) {
-            task.setFinishedCallback(onTaskFinish);
-            try {
-                waits.add(threadPool.submit(task));
-            } catch (Exception e) {
-                Log.e("Failed to submit task", e);
-            }
-        }
-
-        // Wait for all tasks to finish
-        List<WavData> results = new ArrayList<>();
-        for (Future<WavData> wait : waits) {
-            if (canceled[0])
-                break;
-            try {
-                WavData result = wait.get();
-                if (result != null)
-                    results.add(result);
-            } catch (Exception e) {
-                Log.e("Thread failed to complete", e);
-            }
-        }
-
-        // Finish up
-        if (!canceled[0] && callback != null)
-            callback.onFinished(results);
-
-        if (autoShutdown)
-            shutdown();
-
-        return results;
+        return executeAsync(tasks, callback).await();
     }
 
     public List<WavData> execute(List<? extends WavProcessorTask> tasks) {
@@ -112,19 +58,9 @@ public class WavProcessorService {
      * Execute a set of wav processor tasks asynchronously
      * @param tasks Tasks to execute
      * @param callback Task callback
+     * @return Job that can be used to track progress or cancel
      */
-    public void executeAsync(final List<? extends WavProcessorTask> tasks, final TaskCallback callback) {
-        submit(() -> execute(tasks, callback));
-    }
-
-    public void submit(Runnable r) {
-        threadPool.submit(r);
-    }
-
-    /**
-     * Shut down the thread pool
-     */
-    public void shutdown() {
-        threadPool.shutdown();
+    public WavExecutor.Job executeAsync(final List<? extends WavProcessorTask> tasks, final TaskCallback callback) {
+        return WavExecutor.get().submit(priority, tasks, numThreads, callback);
     }
 }
@@ -9,8 +9,7 @@ import java.util.concurrent.Callable;
  */
 public abstract class WavProcessorTask implements Callable<WavData> {
 
-    private boolean _canceled;
-    private OnTaskFinished _finishCallback;
+    private volatile boolean _canceled;
 
     /**
      * Method that does the processing - sub-classes are required to override this
@@ -30,21 +29,8 @@ public abstract class WavProcessorTask implements Callable<WavData> {
         return _canceled;
     }
 
-    /* PRIVATE */
-
-    interface OnTaskFinished {
-        void onFinish(WavProcessorTask task);
-    }
-
-    final void setFinishedCallback(OnTaskFinished callback) {
-        _finishCallback = callback;
-    }
-
     @Override
     public final WavData call() throws Exception {
-        WavData wav = process();
-        if (_finishCallback != null)
-            _finishCallback.onFinish(this);
-        return wav;
+        return process();
     }
 }
@@ -2,6 +2,9 @@ package software.blob.audio.ui.editor;
 
 import software.blob.audio.ui.editor.instruments.Instrument;
 import software.blob.audio.playback.AudioPlayer;
+import software.blob.audio.playback.AudioPlayerParams;
+import software.blob.audio.playback.NullAudioSink;
+import software.blob.audio.playback.WavFileAudioSink;
 import software.blob.audio.ui.editor.controllers.*;
 import software.blob.audio.ui.editor.events.*;
 import software.blob.audio.ui.editor.layers.*;
@@ -13,6 +16,7 @@ import software.blob.ui.util.Log;
 import software.blob.audio.util.Misc;
 import software.blob.ui.view.layout.LinearLayout;
 
+import javax.sound.sampled.LineUnavailableException;
 import java.awt.*;
 import java.io.File;
 import java.lang.reflect.Constructor;
@@ -115,7 +119,7 @@ public class AudioEditor extends View {
         setBackground(Color.BLACK);
 
         try {
-            setAudioPlayer(new AudioPlayer());
+            setAudioPlayer(createAudioPlayer());
         } catch (Exception e) {
             Log.e("Failed to initialize audio player", e);
             return;
@@ -322,6 +326,25 @@ public class AudioEditor extends View {
         return inst;
     }
 
+    /**
+     * Create the audio player used for playback
+     * The "audioblob.sink" system property redirects output for headless runs:
+     * "null" (free-running), "null-clocked" (paced in real time) or a wav file path
+     * @return Audio player
+     * @throws LineUnavailableException If the output fails to initialize
+     */
+    private static AudioPlayer createAudioPlayer() throws LineUnavailableException {
+        AudioPlayerParams params = new AudioPlayerParams();
+        String sink = System.getProperty("audioblob.sink");
+        if ("null".equals(sink))
+            params.sink = new NullAudioSink(false);
+        else if ("null-clocked".equals(sink))
+            params.sink = new NullAudioSink(true);
+        else if (sink != null && !sink.isEmpty())
+            params.sink = new WavFileAudioSink(new File(sink));
+        return new AudioPlayer(params);
+    }
+
     /**
      * Set the audio player instance
      * @param audioPlayer Audio player
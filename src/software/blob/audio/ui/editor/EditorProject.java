@@ -10,6 +10,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Struct that contains project data
@@ -45,11 +46,24 @@ public class EditorProject {
     }
 
     public EditorProject(AudioEditor editor, File file) throws Exception {
-        this(editor, file.getParentFile(), JSONUtils.readObject(file));
-        this.file = file;
+        this(Track.getLayerNames(editor), file);
     }
 
     public EditorProject(AudioEditor editor, File dir, JSONObject json) throws Exception {
+        this(Track.getLayerNames(editor), dir, json);
+    }
+
+    /**
+     * Load a project without an editor (i.e. for rendering from the command line)
+     * @param layers Names of the layers tracks have controls for, mapped by layer ID
+     * @param file Project file
+     */
+    public EditorProject(Map<String, String> layers, File file) throws Exception {
+        this(layers, file.getParentFile(), JSONUtils.readObject(file));
+        this.file = file;
+    }
+
+    public EditorProject(Map<String, String> layers, File dir, JSONObject json) throws Exception {
 
         // Display settings
         if (json.has("settings"))
@@ -76,11 +90,11 @@ public class EditorProject {
             JSONArray tracks = json.getJSONArray("tracks");
             this.tracks = new ArrayList<>(tracks.length());
             for (int i = 0; i < tracks.length(); i++)
-                this.tracks.add(new Track(editor, dir, tracks.getJSONObject(i)));
+                this.tracks.add(new Track(layers, dir, tracks.getJSONObject(i)));
         } else {
             // Legacy single track project
             this.tracks = new ArrayList<>(1);
-            this.tracks.add(new Track(editor, dir, json));
+            this.tracks.add(new Track(layers, dir, json));
         }
 
         // Project-level BPM (legacy)
@@ -17,6 +17,7 @@ import software.blob.audio.ui.editor.midi.quantize.Quantizer;
 import software.blob.audio.ui.editor.pitchcurve.PitchCurveList;
 import software.blob.audio.ui.editor.track.Track;
 import software.blob.audio.ui.editor.view.RecentFilesMenuManager;
+import software.blob.audio.wave.WavWriter;
 import software.blob.ui.util.DialogUtils;
 import software.blob.ui.view.menu.MenuItemView;
 import software.blob.ui.view.menu.MenuView;
@@ -166,8 +167,16 @@ public class MenuController extends EditorController implements ActionListener,
 
             // Export WAV file
             case "export_wav":
-                new ExportWavDialog(editor).showDialog();
+            case "export_wav_24":
+            case "export_wav_float": {
+                ExportWavDialog d = new ExportWavDialog(editor);
+                if (name.equals("export_wav_24"))
+                    d.setFormat(WavWriter.Format.PCM_24);
+                else if (name.equals("export_wav_float"))
+                    d.setFormat(WavWriter.Format.FLOAT_32);
+                d.showDialog();
                 break;
+            }
 
             // Record WAV/MIDI
             case "record":
@@ -2,6 +2,9 @@ package software.blob.audio.ui.editor.controllers;
 
 import software.blob.audio.effects.sbsms.SBSMSEffect;
 import software.blob.audio.playback.AudioHandle;
+import software.blob.audio.playback.AudioPlayer;
+import software.blob.audio.thread.WavExecutor;
+import software.blob.audio.thread.WavProcessorTask;
 import software.blob.audio.thread.callback.FinishCallback;
 import software.blob.audio.thread.callback.TaskCallback;
 import software.blob.audio.ui.editor.AudioEditor;
@@ -20,6 +23,7 @@ import software.blob.audio.ui.editor.midi.MidiNoteList;
 import software.blob.audio.ui.editor.track.Track;
 import software.blob.audio.util.Misc;
 import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.WavWriter;
 import software.blob.ui.util.Log;
 
 import javax.sound.midi.MidiDevice;
@@ -30,8 +34,6 @@ import javax.swing.*;
 import java.io.File;
 import java.lang.ref.WeakReference;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * MIDI input reader and playback
@@ -78,8 +80,9 @@ public class MidiController extends EditorController implements
      * @param velocity Velocity (0 to 127)
      * @param time Time code in seconds to place the note on the piano roll
      *             -1 to not add the note
+     * @param outputFrame Output frame to start the note on (0 = as soon as possible)
      */
-    public void playNote(int value, int velocity, final double time) {
+    public void playNote(int value, int velocity, final double time, long outputFrame) {
         // No velocity means the note is silent
         if (velocity <= 0)
             return;
@@ -139,7 +142,7 @@ public class MidiController extends EditorController implements
         });
 
         // Queue the sound
-        getAudioPlayer().queue(handle);
+        getAudioPlayer().queueAtFrame(handle, outputFrame);
 
         // Add note to the piano roll if we're recording
         final MidiNote note = new MidiNote(value, velocity, time);
@@ -149,6 +152,10 @@ public class MidiController extends EditorController implements
         });
     }
 
+    public void playNote(int value, int velocity, double time) {
+        playNote(value, velocity, time, 0);
+    }
+
     public void playNote(int value, int velocity) {
         playNote(value, velocity, getRecorder().getTimeCode());
     }
@@ -217,7 +224,9 @@ public class MidiController extends EditorController implements
         // Create handle for the sound we're about to play
         final Track.Layer layer = track.getLayer(PianoRollLayer.ID);
         final AudioHandle handle = getAudioPlayer().createHandle(wav);
-        handle.setVolumeCalculator(() -> track.muted || layer.muted ? 0 : track.volume * layer.volume * velVol);
+        handle.setVolume(velVol);
+        if (layer != null)
+            handle.setBus(getPlayback().getBus(track, layer));
         return handle;
     }
 
@@ -304,9 +313,10 @@ public class MidiController extends EditorController implements
                     inst.addSample(new InstrumentSample(note, s.velocity, wav));
 
                     // Cache so we don't have to perform this very slow operation again
+                    // Stored as float so reloading the cached note is lossless
                     String noteName = Misc.getNoteName(note, s.velocity);
                     File noteFile = new File(cacheDir, noteName + ".wav");
-                    wav.writeToFile(noteFile);
+                    wav.writeToFile(noteFile, WavWriter.Format.FLOAT_32);
                     Log.d("Cached note " + noteName + " to " + noteFile);
                 }
                 synchronized (loading) {
@@ -392,7 +402,7 @@ public class MidiController extends EditorController implements
         getAudioPlayer().removeAll(handles);
     }
 
-    private static class SampleProcessTask implements Runnable {
+    private static class SampleProcessTask extends WavProcessorTask {
 
         private final WeakReference<Instrument> instrument;
         private final InstrumentSample sample;
@@ -408,7 +418,7 @@ public class MidiController extends EditorController implements
         }
 
         @Override
-        public void run() {
+        public WavData process() {
             WavData wav = null;
             if (instrument.get() != null) {
                 wav = sample.getWav();
@@ -421,12 +431,12 @@ public class MidiController extends EditorController implements
             }
             if (callback != null)
                 callback.onFinished(wav != null ? Collections.singletonList(wav) : Collections.emptyList());
+            return wav;
         }
     }
 
     private static class SampleLoader extends Thread {
 
-        private final ExecutorService threadPool = Executors.newFixedThreadPool(4);
         private final List<SampleProcessTask> tasks = new ArrayList<>();
         private boolean running;
 
@@ -474,13 +484,17 @@ public class MidiController extends EditorController implements
                 tasks = new ArrayList<>(this.tasks);
                 this.tasks.clear();
             }
-            for (SampleProcessTask t : tasks)
-                threadPool.submit(t);
+            // Notes are generated when they're played, so these jump ahead of other work
+            WavExecutor.get().submit(WavExecutor.Priority.INTERACTIVE, tasks, null);
         }
     }
 
     private class MidiInputReceiver implements Receiver {
 
+        // Device time stamp (microseconds) lined up with an output frame
+        // Notes keep the spacing they were played with instead of the audio buffer's jitter
+        private long anchorStamp = -1, anchorFrame;
+
         @Override
         public void send(MidiMessage msg, long timeStamp) {
             final double timeSecs = getRecorder().getTimeCode();
@@ -495,7 +509,7 @@ public class MidiController extends EditorController implements
                         int velocity = sm.getData2();
                         //Log.d("Note: " + Misc.getNoteName(note) + " (" + velocity + ")");
                         if (velocity > 0 && command == ShortMessage.NOTE_ON)
-                            playNote(note, velocity, timeSecs);
+                            playNote(note, velocity, timeSecs, getOutputFrame(timeStamp));
                         else
                             stopNote(note);
                         break;
@@ -504,6 +518,27 @@ public class MidiController extends EditorController implements
             }
         }
 
+        /**
+         * Map a device time stamp onto the audio player's frame clock
+         * @param timeStamp Time stamp in microseconds (-1 if unsupported)
+         * @return Output frame (0 = as soon as possible)
+         */
+        private long getOutputFrame(long timeStamp) {
+            if (timeStamp < 0)
+                return 0;
+            AudioPlayer player = getAudioPlayer();
+            long next = player.getNextFrame();
+            long frame = anchorFrame + (timeStamp - anchorStamp) * player.getSampleRate() / 1000000L;
+
+            // Re-anchor on the first note or once the two clocks have drifted apart
+            if (anchorStamp < 0 || frame < next || frame > next + player.getBufferFrames() * 2L) {
+                anchorStamp = timeStamp;
+                anchorFrame = next;
+                frame = next;
+            }
+            return frame;
+        }
+
         @Override
         public void close() {
         }
@@ -1,6 +1,9 @@
 package software.blob.audio.ui.editor.controllers;
 
+import software.blob.audio.playback.AudioBus;
 import software.blob.audio.playback.AudioHandle;
+import software.blob.audio.playback.AudioPlayer;
+import software.blob.audio.playback.StreamAudioHandle;
 import software.blob.audio.ui.editor.EditorProject;
 import software.blob.audio.ui.editor.AudioEditor;
 import software.blob.audio.ui.editor.events.EditorProjectListener;
@@ -12,11 +15,15 @@ import software.blob.audio.ui.editor.track.TrackWav;
 import software.blob.audio.ui.editor.track.generator.WavGenerator;
 import software.blob.audio.ui.editor.track.generator.WavGeneratorCallback;
 import software.blob.audio.ui.editor.track.generator.WavGeneratorParams;
+import software.blob.audio.ui.editor.track.generator.WavStream;
 import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.storage.SilentSampleStorage;
 import software.blob.ui.util.Log;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Controls playback for the editor
@@ -26,12 +33,24 @@ public class PlaybackController extends EditorController implements EditorProjec
     // Audio handle for the current audio clip that's playing
     private AudioHandle playing;
 
+    // Time code where the playing clip begins
+    private double playingStartTime;
+
     // Audio is busy processing in response to a play request
     private boolean processing;
 
+    // Render the timeline while it plays instead of rendering all of it first
+    private boolean streaming = true;
+
+    // Timeline currently being rendered for playback
+    private WavStream stream;
+
     // The current time position of playback
     private double timeCode;
 
+    // Submix bus for each track layer - track and layer volume/mute are applied on the bus
+    private final Map<Track.Layer, AudioBus> buses = new ConcurrentHashMap<>();
+
     private final List<PlaybackListener> listeners = new ArrayList<>();
 
     public PlaybackController(AudioEditor editor) {
@@ -56,6 +75,19 @@ public class PlaybackController extends EditorController implements EditorProjec
         return timeCode;
     }
 
+    /**
+     * Set whether playback renders the timeline while it plays
+     * When disabled the whole selection is rendered before playback starts
+     * @param streaming True to stream
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
     /**
      * Start audio playback
      * @param loop True to loop playback
@@ -80,6 +112,29 @@ public class PlaybackController extends EditorController implements EditorProjec
         // Playback for the piano roll is handled separately
         params.excludeLayers.add(getLayer(PianoRollLayer.class));
 
+        if (streaming) {
+            // Render at the output format so the rings can be played directly
+            AudioPlayer player = getAudioPlayer();
+            params.sampleRate = player.getSampleRate();
+            params.channels = player.getChannels();
+
+            int seekFrame = 0;
+            if (timeCode >= startTime && timeCode < startTime + duration)
+                seekFrame = (int) Math.round((timeCode - startTime) * params.sampleRate);
+
+            final WavStream[] s = new WavStream[1];
+            s[0] = stream = generator.stream(params, seekFrame, () -> {
+                processing = false;
+                if (s[0] == stream)
+                    queue(s[0]);
+            });
+            if (stream == null) {
+                Log.e("Failed to stream wav");
+                processing = false;
+            }
+            return;
+        }
+
         generator.generate(params, new WavGeneratorCallback() {
             @Override
             public void onWavGenerated(List<TrackWav> results, WavGeneratorParams params) {
@@ -105,10 +160,10 @@ public class PlaybackController extends EditorController implements EditorProjec
      */
     private void queue(List<TrackWav> wavs, WavGeneratorParams params) {
         // Queue silence while other tracks play alongside
-        WavData silence = new WavData(params.channels, params.getDuration(), params.sampleRate);
-        if (params.loop)
-            silence.setLoopFrames(0, silence.numFrames);
-        queue(silence, params.startTime, 0);
+        WavData silence = createTimeline(params);
+        // Every track starts on the same output frame so they stay sample-aligned
+        long startFrame = getAudioPlayer().getNextFrame();
+        double seek = queueAtFrame(silence, params.startTime, startFrame).getTime();
 
         // Queue track wavs
         for (TrackWav wav : wavs) {
@@ -117,14 +172,66 @@ public class PlaybackController extends EditorController implements EditorProjec
             if (track == null || layer == null)
                 continue;
             AudioHandle h = getAudioPlayer().createHandle(wav);
-            h.setVolumeCalculator(() -> track.muted || layer.muted ? 0 : track.volume * layer.volume);
-            getAudioPlayer().queue(h);
+            h.setPriority(AudioHandle.PRIORITY_PROTECTED);
+            h.setBus(getBus(track, layer));
+            if (seek > 0)
+                h.setTime(seek);
+            getAudioPlayer().queueAtFrame(h, startFrame);
         }
     }
 
-    void queue(WavData wav, final double startTime, double delay) {
+    /**
+     * Queue the track layers of a stream alongside a silent clip that drives playback
+     * @param stream Stream that's rendered its pre-roll
+     */
+    private void queue(WavStream stream) {
+        WavGeneratorParams params = stream.getParams();
+        AudioPlayer player = getAudioPlayer();
+        WavData silence = createTimeline(params);
+
+        // The rings begin at the seek frame, so the handles have to as well
+        double seek = silence.getTime(stream.getSeekFrame());
+        if (seek > 0)
+            setTimeCode(params.startTime + seek);
+        long startFrame = player.getNextFrame();
+        queueAtFrame(silence, params.startTime, startFrame);
+
+        for (WavStream.LayerStream ls : stream.getStreams()) {
+            StreamAudioHandle h = player.createStreamHandle(silence, ls.ring);
+            h.setPriority(AudioHandle.PRIORITY_PROTECTED);
+            h.setBus(getBus(ls.track, ls.layer));
+            if (seek > 0)
+                h.setTime(seek);
+            player.queueAtFrame(h, startFrame);
+        }
+    }
+
+    /**
+     * Create the silent clip that drives playback
+     * It holds no samples - only the length, sample rate and loop points
+     * @param params Wav generator params
+     * @return Timeline wav
+     */
+    private static WavData createTimeline(WavGeneratorParams params) {
+        int numFrames = (int) Math.round(params.getDuration() * params.sampleRate);
+        WavData timeline = new WavData(new SilentSampleStorage(params.channels, numFrames), params.sampleRate);
+        if (params.loop)
+            timeline.setLoopFrames(0, timeline.numFrames);
+        return timeline;
+    }
+
+    /**
+     * Queue a clip as the playing clip
+     * @param wav Wav data
+     * @param startTime Time code where the clip begins
+     * @param startFrame Output frame to start playback on
+     * @return Audio handle
+     */
+    AudioHandle queueAtFrame(WavData wav, final double startTime, long startFrame) {
         boolean wasPlaying = isPlaying();
         final AudioHandle h = playing = getAudioPlayer().createHandle(wav);
+        h.setPriority(AudioHandle.PRIORITY_PROTECTED);
+        playingStartTime = startTime;
 
         // Honor the current time code
         double timeCode = getTimeCode();
@@ -149,19 +256,53 @@ public class PlaybackController extends EditorController implements EditorProjec
         });
 
         // Queue the sound
-        getAudioPlayer().queue(h, delay);
+        getAudioPlayer().queueAtFrame(h, startFrame);
 
         if (!wasPlaying) {
             // Fire listeners
             for (PlaybackListener l : listeners)
                 l.onPlaybackStarted(tcInside ? timeCode : startTime);
         }
+        return h;
+    }
+
+    void queue(WavData wav, double startTime, double delay) {
+        AudioPlayer player = getAudioPlayer();
+        queueAtFrame(wav, startTime, player.getNextFrame() + player.toFrames(delay));
     }
 
     void queue(WavData wav, double startTime) {
         queue(wav, startTime, startTime - getTimeCode());
     }
 
+    /**
+     * Get the output frame where a time code will be heard during playback
+     * Use this with {@link AudioPlayer#queueAtFrame(AudioHandle, long)} to line sounds up with playback
+     * @param time Time code in seconds
+     * @return Output frame on the audio player's frame clock or -1 if unknown
+     */
+    public long getOutputFrame(double time) {
+        AudioHandle h = playing;
+        if (h == null)
+            return -1;
+        return h.getOutputFrame(h.wav.getFrame(time - playingStartTime));
+    }
+
+    /**
+     * Get the submix bus for a track layer
+     * Voices routed through the bus follow the track and layer volume and mute settings
+     * @param track Track
+     * @param layer Track layer
+     * @return Audio bus
+     */
+    public AudioBus getBus(final Track track, final Track.Layer layer) {
+        return buses.computeIfAbsent(layer, k -> {
+            AudioBus bus = getAudioPlayer().createBus();
+            bus.setVolumeCalculator(() -> track.muted || layer.muted ? 0 : track.volume * layer.volume);
+            return bus;
+        });
+    }
+
     /**
      * Check if there's audio currently playing
      * @return True if audio playing
@@ -174,6 +315,11 @@ public class PlaybackController extends EditorController implements EditorProjec
      * Pause playback (if playing)
      */
     public void pause() {
+        if (stream != null) {
+            stream.cancel();
+            stream = null;
+            processing = false;
+        }
         if (isPlaying()) {
             getAudioPlayer().clear();
             playing = null;
@@ -199,6 +345,7 @@ public class PlaybackController extends EditorController implements EditorProjec
     @Override
     public void onLoadProject(EditorProject project) {
         pause();
+        buses.clear();
         setTimeCode(0);
     }
 }
@@ -1,23 +1,24 @@
 package software.blob.audio.ui.editor.dialog;
 
+import software.blob.audio.thread.WavExecutor;
 import software.blob.audio.ui.editor.AudioEditor;
 import software.blob.audio.ui.editor.layers.WaveformLayer;
-import software.blob.audio.ui.editor.track.TrackWav;
 import software.blob.audio.ui.editor.track.generator.WavGenerator;
-import software.blob.audio.ui.editor.track.generator.WavGeneratorCallback;
 import software.blob.audio.ui.editor.track.generator.WavGeneratorParams;
-import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.WavWriter;
+import software.blob.audio.wave.resample.Resampler;
 import software.blob.ui.view.dialog.filebrowser.OnFileSelectedListener;
 import software.blob.ui.util.FileUtils;
 
 import java.io.File;
-import java.util.List;
 
 /**
  * Dialog shown when importing a wav file
  */
 public class ExportWavDialog extends EditorFileDialog implements OnFileSelectedListener {
 
+    private WavWriter.Format format = WavWriter.Format.PCM_16;
+
     public ExportWavDialog(AudioEditor editor) {
         super(editor, "Export WAV");
         setApproveButtonText("Export");
@@ -30,6 +31,14 @@ public class ExportWavDialog extends EditorFileDialog implements OnFileSelectedL
             fileNameTxt.setText(FileUtils.stripExtension(file) + ".wav");
     }
 
+    /**
+     * Set the sample format of the exported file
+     * @param format Sample format
+     */
+    public void setFormat(WavWriter.Format format) {
+        this.format = format;
+    }
+
     @Override
     protected String getLastDirectoryPreference() {
         return "last_directory_export_wav";
@@ -45,24 +54,11 @@ public class ExportWavDialog extends EditorFileDialog implements OnFileSelectedL
             params.endTime = editor.getDuration();
             params.channels = 2;
             params.sampleRate = 44100;
+            params.quality = Resampler.Quality.HIGH;
             params.ignoreMuted = true;
+            params.priority = WavExecutor.Priority.EXPORT;
             params.excludeLayers.add(editor.getLayer(WaveformLayer.class));
-            generator.generate(params, new WavGeneratorCallback() {
-                @Override
-                public void onWavGenerated(List<TrackWav> results, WavGeneratorParams params) {
-                    WavData wav = new WavData(params.channels, params.getDuration(), params.sampleRate);
-                    for (TrackWav tw : results) {
-                        if (tw.track != null)
-                            tw.multiply(tw.track.volume);
-                        wav.mix(tw, tw.time);
-                    }
-                    wav.trimSilence(0);
-                    wav.writeToFile(file);
-                }
-                @Override
-                public void onFailed() {
-                }
-            });
+            generator.export(params, (track, layer) -> track.volume, file, format, true);
         }
     }
 }
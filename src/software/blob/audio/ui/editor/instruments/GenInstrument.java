@@ -4,6 +4,7 @@ import software.blob.audio.effects.sbsms.SBSMSEffect;
 import software.blob.audio.effects.sbsms.SBSMSTask;
 import software.blob.audio.effects.volume.AmplitudeModulator;
 import software.blob.audio.effects.volume.FadeEffect;
+import software.blob.audio.thread.WavExecutor;
 import software.blob.audio.thread.WavProcessorService;
 import software.blob.audio.thread.callback.MessageCallback;
 import software.blob.audio.thread.callback.MultiTaskCallback;
@@ -153,7 +154,7 @@ public abstract class GenInstrument extends Instrument {
                 tasks.add(new SBSMSTask(wav, sbsms));
             });
 
-            final List<WavData> processed = new WavProcessorService().execute(tasks, mcb.getCallback(taskNum.get()));
+            final List<WavData> processed = new WavProcessorService(WavExecutor.Priority.BACKGROUND).execute(tasks, mcb.getCallback(taskNum.get()));
             wavs.clear();
             forEachNote((note, vel, index, total) -> wavs.put(note, vel, processed.get(index)));
         }
@@ -6,6 +6,7 @@ import software.blob.audio.ui.editor.midi.MidiNote;
 import software.blob.ui.util.FileUtils;
 import software.blob.audio.util.JSONUtils;
 import software.blob.audio.util.Misc;
+import software.blob.audio.wave.storage.SampleStorageType;
 import software.blob.ui.util.Log;
 
 import java.io.File;
@@ -43,6 +44,7 @@ public class Instrument {
     protected int channels;
     protected double maxDuration = Double.MAX_VALUE;
     protected double maxAmplitude = DEFAULT_MAX_AMPLITUDE;
+    protected SampleStorageType storageType = SampleStorageType.DOUBLE;
 
     public Instrument() {
         this.file = null;
@@ -77,6 +79,10 @@ public class Instrument {
                 this.channels = json.has("channels") ? json.getInt("channels") : -1;
                 this.maxAmplitude = json.has("maxAmplitude") ? json.getDouble("maxAmplitude") : DEFAULT_MAX_AMPLITUDE;
 
+                // Sample storage backend (double, float, or direct)
+                if (json.has("storage"))
+                    this.storageType = SampleStorageType.fromName(json.getString("storage"), this.storageType);
+
                 // Whether interpolation is supported
                 if (json.has("interpolate"))
                     this.interpolate = json.getBoolean("interpolate");
@@ -231,6 +237,29 @@ public class Instrument {
         }
     }
 
+    /**
+     * Set the storage backend used for the sample data in this instrument
+     * Compact backends use half the memory of the default double precision storage
+     * @param storageType Storage type
+     */
+    public void setStorageType(SampleStorageType storageType) {
+        if (this.storageType != storageType) {
+            this.storageType = storageType;
+            synchronized (samples) {
+                for (InstrumentSample sample : samples)
+                    sample.setStorageType(storageType);
+            }
+        }
+    }
+
+    /**
+     * Get the storage backend used for the sample data in this instrument
+     * @return Storage type
+     */
+    public SampleStorageType getStorageType() {
+        return this.storageType;
+    }
+
     /**
      * Add sample to the list
      * @param noteStr String containing the note and optionally a velocity
@@ -264,6 +293,7 @@ public class Instrument {
         sample.setMaxDuration(maxDuration);
         sample.setSampleRate(sampleRate);
         sample.setChannels(channels);
+        sample.setStorageType(storageType);
 
         int noteKey = sample.getKey();
         synchronized (samples) {
@@ -459,6 +489,9 @@ public class Instrument {
         json.put("interpolate", interpolate);
         json.put("velocityBasedAmp", velocityBasedAmp);
 
+        if (storageType != SampleStorageType.DOUBLE)
+            json.put("storage", storageType.name().toLowerCase(Locale.ROOT));
+
         // Find common directory
         File sampleDir = null;
         for (InstrumentSample sample : samples) {
@@ -494,9 +527,7 @@ public class Instrument {
                     continue; // Cannot create directory
                 }
                 sf = new File(savedSampleDir, noteName + ".wav");
-                wav.unlock();
                 wav.writeToFile(sf);
-                wav.lock();
             }
 
             boolean add = false;
@@ -3,6 +3,7 @@ package software.blob.audio.ui.editor.instruments;
 import software.blob.audio.effects.volume.FadeEffect;
 import software.blob.audio.util.Misc;
 import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.storage.SampleStorageType;
 import software.blob.ui.util.Log;
 
 import java.io.File;
@@ -20,6 +21,7 @@ public class InstrumentSample {
     protected SampleWav wav;
     protected double maxDuration = Double.MAX_VALUE;
     protected int sampleRate, channels;
+    protected SampleStorageType storageType;
     protected int startLoopFrame, endLoopFrame;
 
     protected InstrumentSample(int note, int velocity) {
@@ -80,6 +82,21 @@ public class InstrumentSample {
         }
     }
 
+    /**
+     * Set the storage backend used for this sample's wav data
+     * @param storageType Storage type
+     */
+    public void setStorageType(SampleStorageType storageType) {
+        if (this.storageType != storageType) {
+            this.storageType = storageType;
+            if (this.wav != null && storageType != null) {
+                this.wav.unlock();
+                this.wav.setStorageType(storageType);
+                this.wav.lock();
+            }
+        }
+    }
+
     /**
      * Set the loop start and end frame
      * @param startFrame Frame to start looping
@@ -151,6 +168,7 @@ public class InstrumentSample {
             wav.setChannels(this.channels);
         if (isLoopable())
             wav.setLoopFrames(startLoopFrame, endLoopFrame);
+        wav.setStorageType(this.storageType);
         return new SampleWav(wav);
     }
 
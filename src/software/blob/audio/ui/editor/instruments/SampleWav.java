@@ -12,6 +12,8 @@ public class SampleWav extends LockableWavData {
 
     public SampleWav(WavData src) {
         super(src);
+        // Samples are kept for the life of the instrument - drop any spare capacity
+        trimToSize();
         this.peakAmplitude = src.getPeakAmplitude();
         lock();
     }
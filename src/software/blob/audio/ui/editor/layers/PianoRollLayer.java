@@ -53,6 +53,9 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
     private static final Stroke STROKE = new BasicStroke(1.5f);
     public static final double NOTE_DURATION = AudioEditor.NOTE_DURATION;
 
+    // How far ahead of the playback cursor notes are scheduled (seconds)
+    private static final double SCHEDULE_AHEAD = 0.1;
+
     // Selected notes
     private final Set<MidiNote> selected = new HashSet<>();
 
@@ -527,14 +530,24 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
 
     @Override
     public List<WavGeneratorTask> getGeneratorTasks(final Track track, final WavGeneratorParams params) {
+        return getGeneratorTasks(track, getTrackLayer(track), params);
+    }
+
+    /**
+     * Get the generator tasks for a track's notes and patterns
+     * Doesn't depend on the editor, so it can be used to render without one
+     * @param track Track
+     * @param layer Track layer the output belongs to (may be null)
+     * @param params Parameters for generating wav
+     * @return List of tasks or null to skip
+     */
+    public static List<WavGeneratorTask> getGeneratorTasks(Track track, Track.Layer layer, WavGeneratorParams params) {
         List<WavGeneratorTask> tasks = new ArrayList<>();
 
         // Nothing to do
         if (track.instrument == null)
             return null;
 
-        final Track.Layer layer = getTrackLayer(track);
-
         if (track.notes != null) {
             for (MidiNote n : track.notes) {
                 if (n.time < params.startTime || n.time >= params.endTime)
@@ -641,6 +654,9 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
             playbackHandles.clear();
         lastPlaybackTime = timeCode;
 
+        // Notes starting shortly after the cursor are scheduled ahead of time on the output frame clock
+        double aheadTime = timeCode + SCHEDULE_AHEAD;
+
         // Play incoming notes
         TrackController tracks = editor.getTracks();
         for (int i = 0; i < tracks.getCount(); i++) {
@@ -658,7 +674,7 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
                 for (MidiNote note : track.notes) {
 
                     // Note is not near the cursor
-                    if (timeCode < note.getMinTime() || timeCode >= note.getMaxTime())
+                    if (aheadTime < note.getMinTime() || timeCode >= note.getMaxTime())
                         continue;
 
                     // Don't play notes we just recorded
@@ -676,7 +692,7 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
                 for (TrackPattern tp : track.patterns) {
 
                     // Pattern is not near the cursor
-                    if (timeCode < tp.getMinTime() || timeCode >= tp.getMaxTime())
+                    if (aheadTime < tp.getMinTime() || timeCode >= tp.getMaxTime())
                         continue;
 
                     for (MidiNote note : tp.pattern.notes) {
@@ -685,7 +701,7 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
                         tp.transformNote(note, scratch);
 
                         // Note is not near the cursor
-                        if (timeCode < scratch.getMinTime() || timeCode >= scratch.getMaxTime())
+                        if (aheadTime < scratch.getMinTime() || timeCode >= scratch.getMaxTime())
                             continue;
 
                         // Queue and play the note
@@ -706,6 +722,12 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
             handles.remove(key);
         }
 
+        // Line the note up with playback - notes the cursor already passed start part way through
+        double offset = Math.max(0, timeCode - note.time);
+        long frame = editor.getPlayback().getOutputFrame(note.time + offset);
+        if (offset == 0 && frame < 0)
+            return;
+
         // Get velocity (might be randomized)
         int velocity = note.getRandomVelocity();
 
@@ -716,9 +738,9 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
 
         // Create the playback handle and queue it up
         h = editor.getMidi().createPlaybackHandle(track, sample, velocity);
-        h.setTime(timeCode - note.time);
+        h.setTime(offset);
         handles.put(key, h);
-        getAudioPlayer().queue(h);
+        getAudioPlayer().queueAtFrame(h, Math.max(0, frame));
     }
 
     private void calculateNoteWidth() {
@@ -747,6 +769,26 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
             this.params = params;
         }
 
+        @Override
+        public double getTime() {
+            return note.time;
+        }
+
+        @Override
+        public double getEndTime() {
+            // The sample is picked by a random velocity, so use the longest one it could be
+            if (track.instrument == null)
+                return note.time;
+            double duration = 0;
+            for (InstrumentSample sample : track.instrument.getSamples(note.value)) {
+                SampleWav samWav = sample.getWav();
+                if (samWav == null)
+                    return Double.MAX_VALUE;
+                duration = Math.max(duration, samWav.duration);
+            }
+            return duration > 0 ? note.time + duration : Double.MAX_VALUE;
+        }
+
         @Override
         public TrackWav generate() {
             if (track.instrument == null)
@@ -762,9 +804,12 @@ public class PianoRollLayer extends EditorLayer implements EditorTrackListener,
             if (samWav == null)
                 return null;
 
+            // Share the instrument sample - velocity gain and sample rate
+            // conversion are applied when the note is mixed into the output
             TrackWav wav = new TrackWav(track, layer, new WavData(samWav), note.time);
-            wav.setPeakAmplitude(MidiNote.getAmplitude(velocity, track.instrument.getMaxAmplitude()));
-            wav.setSampleRate(params.sampleRate);
+            double peak = samWav.getPeakAmplitude();
+            if (peak > 0)
+                wav.gain = MidiNote.getAmplitude(velocity, track.instrument.getMaxAmplitude()) / peak;
             return wav;
         }
     }
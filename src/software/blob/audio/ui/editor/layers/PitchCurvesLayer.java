@@ -42,6 +42,8 @@ public class PitchCurvesLayer extends EditorLayer implements BoxSelectionListene
         ClipboardListener, ClipboardOwner,
         EditorViewportListener, WavGeneratorLayer {
 
+    public static final String ID = "pitchCurves";
+
     // Stroke constants
     private static final int STROKE_WIDTH = 2;
     private static final BasicStroke STROKE_DEFAULT = new BasicStroke(STROKE_WIDTH, BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND);
@@ -103,7 +105,7 @@ public class PitchCurvesLayer extends EditorLayer implements BoxSelectionListene
 
     @Override
     public String getID() {
-        return "pitchCurves";
+        return ID;
     }
 
     @Override
@@ -453,6 +455,19 @@ public class PitchCurvesLayer extends EditorLayer implements BoxSelectionListene
 
     @Override
     public List<WavGeneratorTask> getGeneratorTasks(final Track track, WavGeneratorParams params) {
+        return getGeneratorTasks(track, getTrackLayer(track), params);
+    }
+
+    /**
+     * Get the generator tasks for a track's pitch curves
+     * Doesn't depend on the editor, so it can be used to render without one
+     * @param track Track
+     * @param layer Track layer the output belongs to (may be null)
+     * @param params Parameters for generating wav
+     * @return List of tasks or null to skip
+     */
+    public static List<WavGeneratorTask> getGeneratorTasks(final Track track, final Track.Layer layer,
+                                                           final WavGeneratorParams params) {
         List<WavGeneratorTask> tasks = new ArrayList<>();
         final Instrument instrument = track.instrument;
         PitchCurveList curves = track.curves;
@@ -461,21 +476,36 @@ public class PitchCurvesLayer extends EditorLayer implements BoxSelectionListene
         if (instrument == null || curves == null)
             return null;
 
-        final Track.Layer layer = getTrackLayer(track);
         for (final PitchCurve curve : curves) {
             if (curve.isEmpty() || params.startTime > curve.getMaxTime()
                     || params.endTime < curve.getMinTime())
                 continue;
             tasks.add(new WavGeneratorTask() {
                 @Override
-                public TrackWav generate() {
+                public double getTime() {
+                    return curve.pos.time;
+                }
+
+                @Override
+                public double getEndTime() {
+                    // Rendered curves are as long as the instrument sample
+                    InstrumentSample instSample = getSample();
+                    WavData wav = instSample != null ? instSample.getWav() : null;
+                    return wav != null ? curve.pos.time + wav.duration : Double.MAX_VALUE;
+                }
+
+                private InstrumentSample getSample() {
                     PitchSample first = curve.get(0);
-                    InstrumentSample instSample = instrument.getSample(
-                            (int) Math.round(curve.pos.note + first.note),
+                    return instrument.getSample((int) Math.round(curve.pos.note + first.note),
                             MidiNote.getVelocity(first.amplitude, 1));
+                }
+
+                @Override
+                public TrackWav generate() {
+                    InstrumentSample instSample = getSample();
                     WavData processed = curve.apply(instSample, instrument.getMaxAmplitude());
                     TrackWav wav = new TrackWav(track, layer, processed, curve.pos.time);
-                    wav.setSampleRate(params.sampleRate);
+                    wav.setSampleRate(params.sampleRate, params.quality);
                     return wav;
                 }
             });
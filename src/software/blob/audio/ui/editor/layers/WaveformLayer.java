@@ -18,6 +18,8 @@ import java.util.List;
 public class WaveformLayer extends EditorLayer implements
         EditorViewportListener, EditorTrackListener, WavGeneratorLayer {
 
+    public static final String ID = "waveform";
+
     private static final Color COLOR_STROKE = new Color(192, 192, 192, 128);
     private static final Stroke STROKE = new BasicStroke(1);
 
@@ -35,7 +37,7 @@ public class WaveformLayer extends EditorLayer implements
 
     @Override
     public String getID() {
-        return "waveform";
+        return ID;
     }
 
     @Override
@@ -86,6 +88,16 @@ public class WaveformLayer extends EditorLayer implements
             return null;
 
         return Collections.singletonList(new WavGeneratorTask() {
+            @Override
+            public double getTime() {
+                return seed.time;
+            }
+
+            @Override
+            public double getEndTime() {
+                return seed.time + seed.duration;
+            }
+
             @Override
             protected TrackWav generate() {
                 return seed;
@@ -126,9 +138,14 @@ public class WaveformLayer extends EditorLayer implements
                 break;
             minMax[0] = 2;
             minMax[1] = -2;
-            wav.forEachSample((channel, frame, amp) -> {
-                minMax[0] = Math.min(minMax[0], amp);
-                minMax[1] = Math.max(minMax[1], amp);
+            wav.forEachBlock((channel, frame, block, offset, length) -> {
+                double min = minMax[0], max = minMax[1];
+                for (int j = offset; j < offset + length; j++) {
+                    min = Math.min(min, block[j]);
+                    max = Math.max(max, block[j]);
+                }
+                minMax[0] = min;
+                minMax[1] = max;
                 return true;
             }, s, e);
             waveLines[w] = (int) Math.round(minMax[0] * height);
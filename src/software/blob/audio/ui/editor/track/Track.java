@@ -92,6 +92,15 @@ public class Track {
     public transient double duration;
 
     public Track(AudioEditor editor, String name) {
+        this(getLayerNames(editor), name);
+    }
+
+    /**
+     * Create a track without an editor (i.e. for rendering from the command line)
+     * @param layers Layer names mapped by layer ID
+     * @param name Track name
+     */
+    public Track(Map<String, String> layers, String name) {
         this.name = name;
         this.id = ID_GEN.createID();
         this.color = getRandomColor();
@@ -99,15 +108,22 @@ public class Track {
         this.volume = 1.0;
         this.muted = false;
         this.visible = true;
-        for (EditorLayer layer : editor.getLayers()) {
-            String id = layer.getID();
-            if (id != null)
-                this.layers.put(id, new Layer(layer));
-        }
+        for (Map.Entry<String, String> e : layers.entrySet())
+            this.layers.put(e.getKey(), new Layer(e.getValue()));
     }
 
     public Track(AudioEditor editor, File dir, JSONObject json) throws Exception {
-        this(editor, json.optString("name", "Untitled"));
+        this(getLayerNames(editor), dir, json);
+    }
+
+    /**
+     * Load a track without an editor
+     * @param layerNames Layer names mapped by layer ID
+     * @param dir Project directory
+     * @param json Track JSON
+     */
+    public Track(Map<String, String> layerNames, File dir, JSONObject json) throws Exception {
+        this(layerNames, json.optString("name", "Untitled"));
 
         this.bpm = json.optInt("bpm", BPM_DEFAULT);
         this.volume = Misc.clamp(json.optDouble("volume", 1.0), 0.0, 1.0);
@@ -300,6 +316,21 @@ public class Track {
 
     /* Static helper methods */
 
+    /**
+     * Get the names of the editor layers that tracks have controls for
+     * @param editor Audio editor
+     * @return Layer names mapped by layer ID
+     */
+    public static Map<String, String> getLayerNames(AudioEditor editor) {
+        Map<String, String> names = new LinkedHashMap<>();
+        for (EditorLayer layer : editor.getLayers()) {
+            String id = layer.getID();
+            if (id != null)
+                names.put(id, layer.getName());
+        }
+        return names;
+    }
+
     /**
      * Layer control
      */
@@ -310,7 +341,11 @@ public class Track {
         public boolean muted;
 
         public Layer(EditorLayer layer) {
-            this.name = layer.getName();
+            this(layer.getName());
+        }
+
+        public Layer(String name) {
+            this.name = name;
             this.volume = 1.0;
             this.visible = true;
         }
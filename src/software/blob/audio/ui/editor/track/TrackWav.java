@@ -18,6 +18,9 @@ public class TrackWav extends WavData {
     // The time offset for this wav in seconds
     public double time;
 
+    // Amplitude multiplier applied when this wav is mixed into the output
+    public double gain = 1;
+
     /**
      * Create a track wav "pointer" for existing wav data
      * This will NOT perform a deep copy of the source wav data
@@ -26,7 +29,7 @@ public class TrackWav extends WavData {
      * @param time Time in seconds
      */
     public TrackWav(Track track, Track.Layer layer, WavData wav, double time) {
-        super(wav.samples, wav.sampleRate);
+        super(wav.getStorage(), wav.numFrames, wav.sampleRate);
         this.track = track;
         this.layer = layer;
         this.file = wav.file;
@@ -44,8 +47,15 @@ public class TrackWav extends WavData {
         this.layer = layer;
     }
 
+    /**
+     * Load a track wav from a file
+     * Samples are paged in from the file on demand so large recordings stay off the heap
+     * @param track Associated track
+     * @param file Wav file
+     * @param time Time in seconds
+     */
     public TrackWav(Track track, File file, double time) throws Exception {
-        super(file);
+        super(file, true);
         this.track = track;
         this.time = time;
     }
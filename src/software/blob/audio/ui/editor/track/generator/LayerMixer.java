@@ -0,0 +1,206 @@
+package software.blob.audio.ui.editor.track.generator;
+
+import software.blob.audio.thread.WavProcessorTask;
+import software.blob.audio.ui.editor.track.Track;
+import software.blob.audio.ui.editor.track.TrackWav;
+import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.resample.Resampler;
+import software.blob.ui.util.Log;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Generates the tasks for one track layer in time order and mixes them a block at a time
+ * Only the generated wavs that are still sounding are kept
+ */
+class LayerMixer {
+
+    final Track track;
+    final Track.Layer layer;
+    private final WavGeneratorParams params;
+
+    // Tasks sorted by time and the index of the next one to generate
+    private final List<WavGeneratorTask> tasks = new ArrayList<>();
+    private int cursor;
+
+    // Tasks known to finish before this time are skipped (until the mixer is reset)
+    private double skipTime = Double.NEGATIVE_INFINITY;
+
+    // Generated wavs that are still sounding
+    private final List<Voice> voices = new ArrayList<>();
+
+    LayerMixer(Track track, Track.Layer layer, WavGeneratorParams params) {
+        this.track = track;
+        this.layer = layer;
+        this.params = params;
+    }
+
+    void addTasks(List<WavGeneratorTask> tasks) {
+        this.tasks.addAll(tasks);
+    }
+
+    /**
+     * Sort the tasks by time (call once all tasks are added)
+     */
+    void sort() {
+        this.tasks.sort(Comparator.comparingDouble(WavGeneratorTask::getTime));
+    }
+
+    /**
+     * Go back to the start of the timeline
+     */
+    void reset() {
+        this.cursor = 0;
+        this.skipTime = Double.NEGATIVE_INFINITY;
+        this.voices.clear();
+    }
+
+    /**
+     * Skip the tasks that are known to finish before a frame, so starting part way
+     * through the timeline doesn't generate everything before it
+     * @param frame Timeline frame (relative to the start time) rendering starts from
+     */
+    void seek(int frame) {
+        this.skipTime = this.params.startTime + (double) frame / this.params.sampleRate;
+    }
+
+    /**
+     * Get the next task that hasn't been generated, if it starts before a frame
+     * @param end Timeline frame (relative to the start time)
+     * @return Task or null if there are none left before the frame
+     */
+    WavGeneratorTask poll(int end) {
+        double endTime = this.params.startTime + (double) end / this.params.sampleRate;
+        while (this.cursor < this.tasks.size() && this.tasks.get(this.cursor).getTime() < endTime) {
+            WavGeneratorTask task = this.tasks.get(this.cursor++);
+            if (task.getTime() >= this.skipTime || task.getEndTime() >= this.skipTime)
+                return task;
+        }
+        return null;
+    }
+
+    /**
+     * Add a generated voice
+     * @param v Voice (null is ignored)
+     * @param frame Timeline frame the next block starts on
+     */
+    void add(Voice v, int frame) {
+        if (v != null && v.end > frame)
+            this.voices.add(v);
+    }
+
+    /**
+     * Mix the voices that overlap a block and drop the ones that finish within it
+     * @param dst Block to mix into (frame 0 is the start of the block)
+     * @param frame Timeline frame the block starts on
+     * @param length Number of frames in the block
+     */
+    void mix(WavData dst, int frame, int length) {
+        mix(dst, frame, 0, length, 1);
+        skip(frame + length);
+    }
+
+    /**
+     * Mix the voices that overlap part of a block
+     * Different parts of the same block can be mixed on different threads
+     * @param dst Block to mix into (frame 0 is the start of the block)
+     * @param frame Timeline frame the block starts on
+     * @param from First frame of the block to mix into
+     * @param to Frame following the last frame of the block to mix into
+     * @param gain Amplitude multiplier applied on top of each voice's gain
+     */
+    void mix(WavData dst, int frame, int from, int to, double gain) {
+        for (Voice v : this.voices) {
+            if (v.start < frame + to && v.end > frame + from)
+                dst.mix(v.wav, v.start - frame, v.gain * gain, this.params.quality, from, to);
+        }
+    }
+
+    /**
+     * Drop the voices that finish before a frame
+     * @param frame Timeline frame
+     */
+    void skip(int frame) {
+        Iterator<Voice> it = this.voices.iterator();
+        while (it.hasNext()) {
+            if (it.next().end <= frame)
+                it.remove();
+        }
+    }
+
+    /**
+     * Check if any voices are still sounding
+     * @return True if there are voices
+     */
+    boolean hasVoices() {
+        return !this.voices.isEmpty();
+    }
+
+    /**
+     * Generate a task (safe to call from any thread)
+     * @param task Task
+     * @return Voice or null if the task didn't produce any audio
+     */
+    Voice generate(WavGeneratorTask task) {
+        WavData w;
+        try {
+            w = task.process();
+        } catch (Exception e) {
+            Log.e("Failed to generate wav", e);
+            return null;
+        }
+        if (!(w instanceof TrackWav) || w.numFrames <= 0)
+            return null;
+
+        TrackWav tw = (TrackWav) w;
+        WavData wav = tw;
+        if (wav.channels > this.params.channels) {
+            // Down-mix once instead of on every block
+            wav = new WavData(tw);
+            wav.setChannels(this.params.channels);
+        }
+        int start = (int) Math.round((tw.time - this.params.startTime) * this.params.sampleRate);
+        int frames = wav.sampleRate != this.params.sampleRate
+                ? Resampler.get(wav.sampleRate, this.params.sampleRate, this.params.quality).getOutputLength(wav.numFrames)
+                : wav.numFrames;
+        return new Voice(wav, start, start + frames, tw.gain);
+    }
+
+    /**
+     * Generates one task on the executor, to be added to the mixer afterwards
+     */
+    static class GenerateTask extends WavProcessorTask {
+
+        final LayerMixer mixer;
+        final WavGeneratorTask task;
+        Voice voice;
+
+        GenerateTask(LayerMixer mixer, WavGeneratorTask task) {
+            this.mixer = mixer;
+            this.task = task;
+        }
+
+        @Override
+        public WavData process() {
+            this.voice = this.mixer.generate(this.task);
+            return null;
+        }
+    }
+
+    static class Voice {
+
+        final WavData wav;
+        final int start, end;
+        final double gain;
+
+        Voice(WavData wav, int start, int end, double gain) {
+            this.wav = wav;
+            this.start = start;
+            this.end = end;
+            this.gain = gain;
+        }
+    }
+}
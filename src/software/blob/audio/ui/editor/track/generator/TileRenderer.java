@@ -0,0 +1,287 @@
+package software.blob.audio.ui.editor.track.generator;
+
+import software.blob.audio.thread.WavProcessorService;
+import software.blob.audio.thread.WavProcessorTask;
+import software.blob.audio.thread.callback.TaskCallback;
+import software.blob.audio.ui.editor.track.Track;
+import software.blob.audio.wave.WavData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Renders the editor timeline a tile (a fixed number of seconds) at a time
+ * The tasks that start within a tile are generated in parallel, then the tile is split into
+ * regions of time that are each mixed by one worker, so no mixing is left to a single thread.
+ * Tiles are handed to a consumer before moving on and generated wavs are released once they
+ * finish sounding, so memory depends on the tile size and the sounds that overlap it rather
+ * than the length of the timeline.
+ */
+public class TileRenderer {
+
+    // Smallest region of a tile worth mixing on its own thread
+    private static final int MIN_REGION_FRAMES = 4096;
+
+    /**
+     * Receives rendered track layer tiles in timeline order
+     */
+    public interface TileConsumer {
+
+        /**
+         * A track layer's tile has been rendered (layers that are silent for the whole tile are skipped)
+         * The samples are reused for the next tile once this returns
+         * @param track Track
+         * @param layer Track layer (null for generator layers without one)
+         * @param samples Samples [channel][frame]
+         * @param frame Timeline frame (relative to the start time) the tile starts on
+         * @param length Number of frames in the tile
+         */
+        void onTile(Track track, Track.Layer layer, double[][] samples, int frame, int length);
+    }
+
+    /**
+     * Receives tiles of the mix of all track layers in timeline order
+     */
+    public interface MixConsumer {
+
+        /**
+         * A tile of the mix has been rendered (including silent tiles)
+         * The samples are reused for the next tile once this returns
+         * @param samples Samples [channel][frame]
+         * @param frame Timeline frame (relative to the start time) the tile starts on
+         * @param length Number of frames in the tile
+         */
+        void onTile(double[][] samples, int frame, int length);
+    }
+
+    /**
+     * Gain of each track layer in the mix
+     */
+    public interface LayerGain {
+
+        /**
+         * @param track Track
+         * @param layer Track layer (may be null)
+         * @return Amplitude multiplier
+         */
+        double getGain(Track track, Track.Layer layer);
+    }
+
+    private final WavGeneratorParams params;
+    private final List<Layer> layers = new ArrayList<>();
+    private final int numFrames, tileFrames;
+
+    /**
+     * @param params Generator parameters
+     */
+    TileRenderer(WavGeneratorParams params) {
+        this.params = params;
+        this.numFrames = (int) Math.round(params.getDuration() * params.sampleRate);
+        this.tileFrames = Math.max(1, (int) Math.round(params.tileDuration * params.sampleRate));
+    }
+
+    /**
+     * Add the tasks for a track layer
+     * @param track Track
+     * @param layer Track layer (may be null)
+     * @param tasks Generator tasks
+     */
+    void add(Track track, Track.Layer layer, List<WavGeneratorTask> tasks) {
+        for (Layer l : this.layers) {
+            if (l.mixer.track == track && l.mixer.layer == layer) {
+                l.mixer.addTasks(tasks);
+                return;
+            }
+        }
+        Layer l = new Layer(new LayerMixer(track, layer, this.params));
+        l.mixer.addTasks(tasks);
+        this.layers.add(l);
+    }
+
+    /**
+     * Check if there's anything to render
+     * @return True if no tasks were added
+     */
+    public boolean isEmpty() {
+        return this.layers.isEmpty();
+    }
+
+    /**
+     * Get the number of tiles the timeline is split into
+     * @return Tile count
+     */
+    public int getNumTiles() {
+        return (this.numFrames + this.tileFrames - 1) / this.tileFrames;
+    }
+
+    /**
+     * Render each track layer and wait for it to finish
+     * @param consumer Consumer for the rendered tiles
+     * @param callback Progress is reported once per tile and rendering stops if it returns false
+     *                 ({@link TaskCallback#onFinished(List)} isn't called) (optional)
+     * @return True if the whole timeline was rendered
+     */
+    public boolean render(TileConsumer consumer, TaskCallback callback) {
+        return render(consumer, null, null, callback);
+    }
+
+    /**
+     * Render the mix of all track layers and wait for it to finish
+     * Voices are mixed straight into the output tile, so the layers are never rendered separately
+     * @param consumer Consumer for the rendered tiles
+     * @param gain Gain of each track layer (null for unity)
+     * @param callback Progress is reported once per tile and rendering stops if it returns false
+     *                 ({@link TaskCallback#onFinished(List)} isn't called) (optional)
+     * @return True if the whole timeline was rendered
+     */
+    public boolean mixdown(MixConsumer consumer, LayerGain gain, TaskCallback callback) {
+        return render(null, consumer, gain, callback);
+    }
+
+    private boolean render(TileConsumer layerConsumer, MixConsumer mixConsumer, LayerGain gain, TaskCallback callback) {
+        for (Layer l : this.layers) {
+            l.mixer.sort();
+            l.mixer.reset();
+            l.gain = gain != null ? gain.getGain(l.mixer.track, l.mixer.layer) : 1;
+        }
+
+        WavProcessorService service = new WavProcessorService(this.params.priority);
+        Tile master = mixConsumer != null ? new Tile() : null;
+        try {
+            int numTiles = getNumTiles();
+            List<WavProcessorTask> generate = new ArrayList<>();
+            List<WavProcessorTask> regions = new ArrayList<>();
+            List<Layer> active = new ArrayList<>();
+            for (int t = 0; t < numTiles; t++) {
+                int frame = t * this.tileFrames;
+                int length = Math.min(this.tileFrames, this.numFrames - frame);
+                int end = frame + length;
+
+                // Generate everything that starts within the tile
+                generate.clear();
+                for (Layer l : this.layers) {
+                    WavGeneratorTask task;
+                    while ((task = l.mixer.poll(end)) != null)
+                        generate.add(new LayerMixer.GenerateTask(l.mixer, task));
+                }
+                if (!generate.isEmpty()) {
+                    service.execute(generate);
+                    for (WavProcessorTask task : generate) {
+                        LayerMixer.GenerateTask g = (LayerMixer.GenerateTask) task;
+                        g.mixer.add(g.voice, frame);
+                    }
+                }
+
+                // Split the tile into regions of time, each mixed by one worker
+                active.clear();
+                for (Layer l : this.layers) {
+                    if (l.mixer.hasVoices() && (master == null || l.gain != 0))
+                        active.add(l);
+                }
+                regions.clear();
+                int maxRegions = Math.max(1, Math.min(service.getNumThreads(), length / MIN_REGION_FRAMES));
+                if (master != null) {
+                    master.clear(length);
+                    if (!active.isEmpty())
+                        addRegions(regions, master, active, frame, length, maxRegions);
+                } else if (!active.isEmpty()) {
+                    int perLayer = Math.max(1, Math.min(maxRegions, (maxRegions + active.size() - 1) / active.size()));
+                    for (Layer l : active) {
+                        l.tile.clear(length);
+                        addRegions(regions, l.tile, Collections.singletonList(l), frame, length, perLayer);
+                    }
+                }
+                if (!regions.isEmpty())
+                    service.execute(regions);
+                for (Layer l : this.layers)
+                    l.mixer.skip(end);
+
+                if (master != null)
+                    mixConsumer.onTile(master.samples, frame, length);
+                else {
+                    for (Layer l : active)
+                        layerConsumer.onTile(l.mixer.track, l.mixer.layer, l.tile.samples, frame, length);
+                }
+
+                if (callback != null && !callback.onProgress(t + 1, numTiles))
+                    return false;
+            }
+            return true;
+        } finally {
+            for (Layer l : this.layers) {
+                l.mixer.reset();
+                l.tile.release();
+            }
+        }
+    }
+
+    private void addRegions(List<WavProcessorTask> regions, Tile tile, List<Layer> layers,
+                            int frame, int length, int count) {
+        for (int r = 0; r < count; r++) {
+            int from = (int) ((long) length * r / count);
+            int to = (int) ((long) length * (r + 1) / count);
+            regions.add(new RegionTask(tile, layers, frame, from, to));
+        }
+    }
+
+    /**
+     * Buffer a tile is mixed into (allocated the first time it's used)
+     */
+    private class Tile {
+
+        double[][] samples;
+        WavData wav;
+
+        void clear(int length) {
+            if (this.samples == null) {
+                this.samples = new double[params.channels][tileFrames];
+                this.wav = new WavData(this.samples, params.sampleRate);
+            }
+            for (double[] s : this.samples)
+                Arrays.fill(s, 0, length, 0);
+        }
+
+        void release() {
+            this.samples = null;
+            this.wav = null;
+        }
+    }
+
+    private class Layer {
+
+        final LayerMixer mixer;
+        final Tile tile = new Tile();
+        double gain = 1;
+
+        Layer(LayerMixer mixer) {
+            this.mixer = mixer;
+        }
+    }
+
+    /**
+     * Mixes the voices of one or more layers into a region of a tile
+     */
+    private static class RegionTask extends WavProcessorTask {
+
+        final Tile tile;
+        final List<Layer> layers;
+        final int frame, from, to;
+
+        RegionTask(Tile tile, List<Layer> layers, int frame, int from, int to) {
+            this.tile = tile;
+            this.layers = layers;
+            this.frame = frame;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public WavData process() {
+            for (Layer l : this.layers)
+                l.mixer.mix(this.tile.wav, this.frame, this.from, this.to, l.gain);
+            return null;
+        }
+    }
+}
@@ -1,16 +1,22 @@
 package software.blob.audio.ui.editor.track.generator;
 
-import software.blob.audio.thread.WavProcessorService;
+import software.blob.audio.thread.callback.FinishCallback;
+import software.blob.audio.thread.callback.TaskCallback;
 import software.blob.audio.ui.DialogProgressCallback;
 import software.blob.audio.ui.editor.AudioEditor;
 import software.blob.audio.ui.editor.layers.EditorLayer;
 import software.blob.audio.ui.editor.track.Track;
 import software.blob.audio.ui.editor.track.TrackWav;
 import software.blob.audio.wave.WavData;
+import software.blob.audio.wave.WavWriter;
 import software.blob.ui.util.Log;
 
 import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,54 +45,236 @@ public class WavGenerator {
             return;
         }
 
-        // Get all layers that implement WavGeneratorLayer
-        List<WavGeneratorLayer> layers = new ArrayList<>();
-        for (EditorLayer layer : editor.getLayers()) {
-            if (layer instanceof WavGeneratorLayer && !params.excludeLayers.contains(layer))
-                layers.add((WavGeneratorLayer) layer);
+        final TileRenderer renderer = createRenderer(params);
+
+        // Nothing to play - Return empty wav
+        if (renderer.isEmpty()) {
+            if (callback != null)
+                callback.onWavGenerated(new ArrayList<>(), params);
+            return;
         }
 
-        List<WavGeneratorTask> tasks = new ArrayList<>();
-        //final TrackWav output = new TrackWav(params.channels, params.getDuration(), params.sampleRate);
+        // Output track wav mapped by track UID and layer name
+        final Map<String, TrackWav> output = new HashMap<>();
+        render(params, callback, pcb -> {
+            boolean finished = renderer.render((track, layer, samples, frame, length) -> {
+                String uid = String.valueOf(track.id);
+                if (layer != null)
+                    uid += "_" + layer.name;
+                TrackWav outputWav = output.computeIfAbsent(uid,
+                        k -> new TrackWav(track, layer, params.channels, params.getDuration(), params.sampleRate));
+                for (int c = 0; c < samples.length; c++)
+                    outputWav.setSamples(c, frame, samples[c], 0, length);
+            }, pcb);
+            return finished ? new ArrayList<>(output.values()) : null;
+        });
+    }
 
-        // Begin gathering processor tasks
-        for (WavGeneratorLayer layer : layers) {
-            for (Track track : editor.getTracks()) {
+    /**
+     * Begin exporting the mix of all track layers to a wav file
+     * The mix is rendered a tile at a time and each tile is written as soon as it's finished,
+     * so memory use doesn't depend on the length of the timeline
+     * @param params Parameters
+     * @param gain Gain of each track layer (null for unity)
+     * @param file File to write
+     * @param format Sample format
+     * @param trimSilence True to trim silence from the start and end of the file
+     */
+    public void export(final WavGeneratorParams params, final TileRenderer.LayerGain gain,
+                       final File file, final WavWriter.Format format, final boolean trimSilence) {
+
+        // Make sure parameters are valid
+        if (!params.isValid()) {
+            Log.w("Invalid export parameters");
+            return;
+        }
+
+        final TileRenderer renderer = createRenderer(params);
+        render(pcb -> export(renderer, params, gain, file, format, trimSilence, pcb)
+                ? Collections.emptyList() : null, results -> {}, null);
+    }
 
-                // Ignore muted track/layer
-                if (params.ignoreMuted) {
-                    if (track.isMuted())
-                        continue;
-                    if (layer instanceof EditorLayer) {
-                        Track.Layer l = ((EditorLayer) layer).getTrackLayer(track);
-                        if (l != null && (l.muted || l.volume <= 0))
-                            continue;
-                    }
+    /**
+     * Export the mix of all track layers to a wav file and wait for it to finish
+     * @param renderer Renderer for the timeline
+     * @param params Parameters the renderer was created with
+     * @param gain Gain of each track layer (null for unity)
+     * @param file File to write
+     * @param format Sample format
+     * @param trimSilence True to trim silence from the start and end of the file
+     * @param callback Progress is reported once per tile and the export stops if it returns false (optional)
+     * @return True if the file was written, false if canceled
+     * @throws IOException Failed to write the file
+     */
+    public static boolean export(TileRenderer renderer, WavGeneratorParams params, TileRenderer.LayerGain gain,
+                                 File file, WavWriter.Format format, boolean trimSilence,
+                                 TaskCallback callback) throws IOException {
+        boolean finished = false;
+        try (WavWriter writer = new WavWriter(file, params.channels, params.sampleRate, format)) {
+            writer.setTrimSilence(trimSilence);
+            finished = renderer.mixdown((samples, frame, length) -> {
+                try {
+                    writer.write(samples, 0, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+            }, gain, callback);
+
+            // Out of range samples are clipped by the writer
+            if (writer.getClippedSamples() > 0)
+                Log.w(file.getName() + " has audio clipping!");
+        } finally {
+            // Failed or canceled - don't leave a partial file behind
+            if (!finished && file.exists() && !file.delete())
+                Log.w("Failed to delete partial export: " + file);
+        }
+        if (finished)
+            Log.d("Exported " + file);
+        return finished;
+    }
 
-                List<WavGeneratorTask> layerTasks = layer.getGeneratorTasks(track, params);
-                if (layerTasks != null)
-                    tasks.addAll(layerTasks);
+    /**
+     * Create a renderer for the timeline
+     * The renderer can be used to render the timeline a tile at a time without
+     * keeping the whole output in memory
+     * @param params Parameters (must be valid)
+     * @return Tile renderer
+     */
+    public TileRenderer createRenderer(WavGeneratorParams params) {
+        TileRenderer renderer = new TileRenderer(params);
+        for (WavGeneratorLayer layer : getLayers(params)) {
+            for (Track track : editor.getTracks()) {
+                Track.Layer l = layer instanceof EditorLayer ? ((EditorLayer) layer).getTrackLayer(track) : null;
+                add(renderer, layer, track, l, params);
             }
         }
+        return renderer;
+    }
 
-        // Nothing to play - Return empty wav
-        if (tasks.isEmpty()) {
-            if (callback != null)
-                callback.onWavGenerated(new ArrayList<>(), params);
-            return;
+    /**
+     * Create a renderer for a set of tracks without an editor
+     * @param params Parameters (must be valid)
+     * @param tracks Tracks to render
+     * @param layers Generator layers mapped by the ID of the track layer they render to
+     * @return Tile renderer
+     */
+    public static TileRenderer createRenderer(WavGeneratorParams params, List<Track> tracks,
+                                              Map<String, WavGeneratorLayer> layers) {
+        TileRenderer renderer = new TileRenderer(params);
+        for (Map.Entry<String, WavGeneratorLayer> e : layers.entrySet()) {
+            for (Track track : tracks)
+                add(renderer, e.getValue(), track, track.getLayer(e.getKey()), params);
+        }
+        return renderer;
+    }
+
+    private static void add(TileRenderer renderer, WavGeneratorLayer layer, Track track,
+                            Track.Layer l, WavGeneratorParams params) {
+        List<WavGeneratorTask> layerTasks = getTasks(layer, track, l, params);
+        if (layerTasks != null && !layerTasks.isEmpty())
+            renderer.add(track, l, layerTasks);
+    }
+
+    /**
+     * Begin rendering WAV while it plays
+     * Unlike {@link #generate(WavGeneratorParams, WavGeneratorCallback)} the timeline is
+     * rendered a block at a time, starting from the seek position, into a ring per track layer
+     * @param params Parameters
+     * @param seekFrame Frame (relative to the start time) where playback begins
+     * @param onReady Fired on the UI thread once the pre-roll has been rendered
+     * @return Stream or null if the parameters are invalid
+     */
+    public WavStream stream(WavGeneratorParams params, int seekFrame, Runnable onReady) {
+        if (!params.isValid())
+            return null;
+
+        WavStream stream = new WavStream(params, seekFrame);
+        for (WavGeneratorLayer layer : getLayers(params)) {
+            if (!(layer instanceof EditorLayer))
+                continue;
+            for (Track track : editor.getTracks()) {
+                Track.Layer l = ((EditorLayer) layer).getTrackLayer(track);
+                List<WavGeneratorTask> layerTasks = getTasks(layer, track, l, params);
+                if (l != null && layerTasks != null && !layerTasks.isEmpty())
+                    stream.add(track, l, layerTasks);
+            }
         }
+        stream.start(onReady);
+        return stream;
+    }
+
+    /**
+     * Get all layers that implement {@link WavGeneratorLayer}
+     * @param params Parameters
+     * @return Generator layers
+     */
+    private List<WavGeneratorLayer> getLayers(WavGeneratorParams params) {
+        List<WavGeneratorLayer> layers = new ArrayList<>();
+        for (EditorLayer layer : editor.getLayers()) {
+            if (layer instanceof WavGeneratorLayer && !params.excludeLayers.contains(layer))
+                layers.add((WavGeneratorLayer) layer);
+        }
+        return layers;
+    }
+
+    /**
+     * Get the generator tasks for a track layer
+     * @param layer Generator layer
+     * @param track Track
+     * @param l Track layer (may be null)
+     * @param params Parameters
+     * @return Tasks or null to skip
+     */
+    private static List<WavGeneratorTask> getTasks(WavGeneratorLayer layer, Track track, Track.Layer l,
+                                                   WavGeneratorParams params) {
+        // Ignore muted track/layer
+        if (params.ignoreMuted) {
+            if (track.isMuted())
+                return null;
+            if (l != null && (l.muted || l.volume <= 0))
+                return null;
+        }
+        return layer.getGeneratorTasks(track, params);
+    }
+
+    /**
+     * Run a render on a background thread while showing progress
+     * @param job Render that returns the output wavs (or null if canceled)
+     * @param onFinished Called with the output once the render finishes
+     * @param onCanceled Called if the progress dialog is canceled (optional)
+     */
+    private void render(final RenderJob job, final FinishCallback onFinished, final Runnable onCanceled) {
+        final DialogProgressCallback pcb = new DialogProgressCallback(editor.getFrame(), "Generating output", onFinished);
+        pcb.setOnCancel(onCanceled);
+
+        Thread thread = new Thread(() -> {
+            List<WavData> results;
+            try {
+                results = job.render(pcb);
+            } catch (Exception e) {
+                Log.e("Failed to render timeline", e);
+                results = new ArrayList<>();
+            }
+            if (results != null)
+                pcb.onFinished(results);
+        }, "WavGenerator");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-        DialogProgressCallback pcb = new DialogProgressCallback(editor.getFrame(), "Generating output", results -> {
+    /**
+     * Render for {@link #generate(WavGeneratorParams, WavGeneratorCallback)} that's
+     * finished with {@link #onFinish(WavGeneratorParams, List, WavGeneratorCallback)}
+     */
+    private void render(final WavGeneratorParams params, final WavGeneratorCallback callback, final RenderJob job) {
+        render(job, results -> {
             try {
                 onFinish(params, results, callback);
             } catch (Exception e) {
                 Log.e("Failed to process results", e);
                 SwingUtilities.invokeLater(() -> fail(callback));
             }
-        });
-        pcb.setOnCancel(() -> fail(callback));
-        new WavProcessorService().executeAsync(tasks, pcb);
+        }, () -> fail(callback));
     }
 
     private void onFinish(final WavGeneratorParams params, List<WavData> results, final WavGeneratorCallback callback) {
@@ -96,33 +284,12 @@ public class WavGenerator {
             return;
         }
 
-        // Output track wav mapped by track UID and layer name
-        final Map<String, TrackWav> output = new HashMap<>();
-
-        // Mix results into a single wave
-        for (WavData w : results) {
-            if (!(w instanceof TrackWav)) {
-                Log.w("Ignoring non-track wav: " + w);
-                continue;
-            }
-
-            TrackWav tw = (TrackWav) w;
-            if (tw.track == null) {
-                Log.w("Ignoring wav with missing track: " + tw);
-                continue;
-            }
-
-            String uid = String.valueOf(tw.track.id);
-            if (tw.layer != null)
-                uid += "_" + tw.layer.name;
-
-            TrackWav outputWav = output.computeIfAbsent(uid,
-                    k -> new TrackWav(tw.track, tw.layer, params.channels, params.getDuration(), params.sampleRate));
-            outputWav.mix(tw, tw.time - params.startTime);
-        }
+        final List<TrackWav> output = new ArrayList<>();
+        for (WavData w : results)
+            output.add((TrackWav) w);
 
         // Trim to desired duration
-        for (TrackWav wav : output.values()) {
+        for (TrackWav wav : output) {
             wav.trim(0, wav.getFrame(params.getDuration()));
             if (params.loop)
                 wav.setLoopFrames(0, wav.numFrames);
@@ -132,7 +299,7 @@ public class WavGenerator {
         // Start playback
         SwingUtilities.invokeLater(() -> {
             if (callback != null)
-                callback.onWavGenerated(new ArrayList<>(output.values()), params);
+                callback.onWavGenerated(output, params);
         });
     }
 
@@ -140,4 +307,8 @@ public class WavGenerator {
         if (cb != null)
             cb.onFailed();
     }
+
+    private interface RenderJob {
+        List<WavData> render(TaskCallback callback) throws Exception;
+    }
 }
@@ -1,5 +1,8 @@
 package software.blob.audio.ui.editor.track.generator;
 
+import software.blob.audio.thread.WavExecutor;
+import software.blob.audio.wave.resample.Resampler;
+
 import java.util.HashSet;
 import java.util.Set;
 
@@ -20,12 +23,27 @@ public class WavGeneratorParams {
     // Output sample rate
     public int sampleRate = 44100;
 
+    // Quality used when resampling audio to the output sample rate
+    public Resampler.Quality quality = Resampler.Quality.DRAFT;
+
     // Flag output as loopable
     public boolean loop;
 
     // Ignore muted tracks
     public boolean ignoreMuted;
 
+    // Priority of the rendering work on the shared executor
+    public WavExecutor.Priority priority = WavExecutor.Priority.PLAYBACK;
+
+    // Seconds of the timeline rendered at a time when generating the whole WAV
+    public double tileDuration = 1;
+
+    // Seconds rendered before streamed playback starts
+    public double preRoll = 0.1;
+
+    // Seconds streamed rendering may run ahead of playback
+    public double renderAhead = 3;
+
     // Specific layers to exclude
     public final Set<WavGeneratorLayer> excludeLayers = new HashSet<>();
 
@@ -34,7 +52,8 @@ public class WavGeneratorParams {
      * @return True if valid
      */
     public boolean isValid() {
-        return startTime >= 0 && endTime > startTime && channels > 0 && sampleRate > 0;
+        return startTime >= 0 && endTime > startTime && channels > 0 && sampleRate > 0
+                && tileDuration > 0;
     }
 
     /**
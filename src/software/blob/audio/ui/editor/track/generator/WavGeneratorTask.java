@@ -15,6 +15,24 @@ public abstract class WavGeneratorTask extends WavProcessorTask {
      */
     protected abstract TrackWav generate();
 
+    /**
+     * Get the time the generated snippet starts on the timeline
+     * Streaming playback generates tasks in this order so it only renders what's needed next
+     * @return Start time in seconds (0 if not known ahead of time)
+     */
+    public double getTime() {
+        return 0;
+    }
+
+    /**
+     * Get the time the generated snippet finishes on the timeline, if it's known without generating it
+     * Streaming playback skips tasks that finish before the frame it starts from
+     * @return End time in seconds ({@link Double#MAX_VALUE} if not known ahead of time)
+     */
+    public double getEndTime() {
+        return Double.MAX_VALUE;
+    }
+
     @Override
     public final WavData process() {
         return generate();
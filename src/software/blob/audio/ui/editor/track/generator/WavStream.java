@@ -0,0 +1,225 @@
+package software.blob.audio.ui.editor.track.generator;
+
+import software.blob.audio.playback.SampleRing;
+import software.blob.audio.thread.WavProcessorService;
+import software.blob.audio.thread.WavProcessorTask;
+import software.blob.audio.ui.editor.track.Track;
+import software.blob.audio.wave.WavData;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Renders the editor timeline in time-ordered blocks while it plays
+ * Each track layer is rendered into its own {@link SampleRing} so it can be
+ * played (and muted or mixed) separately, like the output of {@link WavGenerator}
+ * The tasks that start within a block are generated in parallel on the shared executor
+ */
+public class WavStream implements SampleRing.Cancel {
+
+    // Number of frames rendered at a time
+    private static final int BLOCK_FRAMES = 2048;
+
+    private final WavGeneratorParams params;
+    private final List<LayerStream> streams = new ArrayList<>();
+    private final int numFrames, seekFrame, preRollFrames;
+    private final double[][] block;
+    private final WavData blockWav;
+
+    private Runnable onReady;
+    private volatile boolean canceled, finished;
+
+    /**
+     * @param params Generator parameters
+     * @param seekFrame Timeline frame (relative to the start time) where the stream begins
+     */
+    WavStream(WavGeneratorParams params, int seekFrame) {
+        this.params = params;
+        this.numFrames = (int) Math.round(params.getDuration() * params.sampleRate);
+        this.seekFrame = Math.max(0, Math.min(seekFrame, this.numFrames));
+        this.preRollFrames = (int) Math.round(params.preRoll * params.sampleRate);
+        this.block = new double[params.channels][BLOCK_FRAMES];
+        this.blockWav = new WavData(this.block, params.sampleRate);
+    }
+
+    /**
+     * Add the tasks for a track layer
+     * @param track Track
+     * @param layer Track layer
+     * @param tasks Generator tasks
+     */
+    void add(Track track, Track.Layer layer, List<WavGeneratorTask> tasks) {
+        LayerStream stream = null;
+        for (LayerStream s : this.streams) {
+            if (s.track == track && s.layer == layer) {
+                stream = s;
+                break;
+            }
+        }
+        if (stream == null) {
+            int capacity = (int) Math.round(this.params.renderAhead * this.params.sampleRate);
+            capacity = Math.max(capacity, this.preRollFrames + BLOCK_FRAMES);
+            stream = new LayerStream(track, layer, new SampleRing(this.params.channels, capacity));
+            this.streams.add(stream);
+        }
+        stream.mixer.addTasks(tasks);
+    }
+
+    /**
+     * Begin rendering on a background thread
+     * @param onReady Fired on the UI thread once the pre-roll has been rendered
+     */
+    void start(Runnable onReady) {
+        this.onReady = onReady;
+        for (LayerStream s : this.streams) {
+            s.mixer.sort();
+            s.mixer.seek(this.seekFrame);
+        }
+        Thread thread = new Thread(this::render, "WavStream");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Get the rendered track layers
+     * @return Layer streams
+     */
+    public List<LayerStream> getStreams() {
+        return Collections.unmodifiableList(this.streams);
+    }
+
+    public WavGeneratorParams getParams() {
+        return this.params;
+    }
+
+    /**
+     * Get the timeline frame the stream begins on
+     * @return Frame relative to the start time
+     */
+    public int getSeekFrame() {
+        return this.seekFrame;
+    }
+
+    /**
+     * Stop rendering
+     */
+    public void cancel() {
+        this.canceled = true;
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return this.canceled;
+    }
+
+    /**
+     * Check if the whole stream has been rendered
+     * Looping streams are never finished
+     * @return True if finished
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    private void render() {
+        WavProcessorService service = new WavProcessorService(this.params.priority);
+        List<WavProcessorTask> generate = new ArrayList<>();
+        boolean ready = false;
+        long streamPos = 0;
+        int frame = this.seekFrame;
+
+        while (!this.canceled && this.numFrames > 0) {
+            // Loop back to the start of the clip
+            if (frame >= this.numFrames) {
+                if (!this.params.loop)
+                    break;
+                frame = 0;
+                for (LayerStream s : this.streams)
+                    s.mixer.reset();
+            }
+
+            // Blocks never straddle the end of the clip
+            int length = Math.min(BLOCK_FRAMES, this.numFrames - frame);
+            int end = frame + length;
+            for (LayerStream s : this.streams) {
+                if (!s.ring.awaitSpace(length, this))
+                    return;
+            }
+
+            // Generate everything that starts within the block
+            generate.clear();
+            for (LayerStream s : this.streams) {
+                WavGeneratorTask task;
+                while ((task = s.mixer.poll(end)) != null)
+                    generate.add(new LayerMixer.GenerateTask(s.mixer, task));
+            }
+            if (!generate.isEmpty()) {
+                service.execute(generate);
+                for (WavProcessorTask task : generate) {
+                    LayerMixer.GenerateTask g = (LayerMixer.GenerateTask) task;
+                    g.mixer.add(g.voice, frame);
+                }
+            }
+
+            for (LayerStream s : this.streams)
+                s.render(frame, length, streamPos);
+            streamPos += length;
+            frame += length;
+
+            if (!ready && streamPos >= this.preRollFrames) {
+                ready = true;
+                fireReady();
+            }
+        }
+
+        this.finished = true;
+        if (!ready && !this.canceled)
+            fireReady();
+    }
+
+    private void fireReady() {
+        if (this.onReady != null)
+            SwingUtilities.invokeLater(() -> {
+                if (!this.canceled)
+                    this.onReady.run();
+            });
+    }
+
+    /**
+     * Audio rendered for one track layer
+     */
+    public class LayerStream {
+
+        public final Track track;
+        public final Track.Layer layer;
+        public final SampleRing ring;
+
+        private final LayerMixer mixer;
+
+        private LayerStream(Track track, Track.Layer layer, SampleRing ring) {
+            this.track = track;
+            this.layer = layer;
+            this.ring = ring;
+            this.mixer = new LayerMixer(track, layer, params);
+        }
+
+        private void render(int frame, int length, long streamPos) {
+            int end = frame + length;
+
+            // Playback already moved past this block
+            if (this.ring.getReadPosition() >= streamPos + length) {
+                this.ring.skipTo(streamPos + length);
+                this.mixer.skip(end);
+                return;
+            }
+
+            for (double[] samples : block)
+                Arrays.fill(samples, 0, length, 0);
+            this.mixer.mix(blockWav, frame, length);
+            this.ring.write(block, 0, length);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package software.blob.audio.wave;
 
+import software.blob.audio.wave.resample.Resampler;
+import software.blob.audio.wave.storage.SampleStorageType;
 import software.blob.ui.util.Log;
 
 import java.util.Arrays;
@@ -17,7 +19,7 @@ public class LockableWavData extends WavData {
         this.file = src.file;
         this.name = src.name;
         this.channels = src.channels;
-        this.samples = src.samples;
+        this.storage = src.storage;
         this.sampleRate = src.sampleRate;
         this.numFrames = src.numFrames;
         this.duration = src.duration;
@@ -54,9 +56,27 @@ public class LockableWavData extends WavData {
     }
 
     @Override
-    public void setSampleRate(int sampleRate) {
+    public void setSampleRate(int sampleRate, Resampler.Quality quality) {
         if (checkUnlocked())
-            super.setSampleRate(sampleRate);
+            super.setSampleRate(sampleRate, quality);
+    }
+
+    @Override
+    public void setStorageType(SampleStorageType type) {
+        if (checkUnlocked())
+            super.setStorageType(type);
+    }
+
+    @Override
+    public void ensureCapacity(int minFrames) {
+        if (checkUnlocked())
+            super.ensureCapacity(minFrames);
+    }
+
+    @Override
+    public void trimToSize() {
+        if (checkUnlocked())
+            super.trimToSize();
     }
 
     @Override
@@ -95,6 +115,18 @@ public class LockableWavData extends WavData {
             super.mix(other, startFrame, numFrames);
     }
 
+    @Override
+    public void mix(WavData other, int startFrame, double gain, Resampler.Quality quality) {
+        if (checkUnlocked())
+            super.mix(other, startFrame, gain, quality);
+    }
+
+    @Override
+    public void mix(WavData other, int startFrame, double gain, Resampler.Quality quality, int fromFrame, int toFrame) {
+        if (checkUnlocked())
+            super.mix(other, startFrame, gain, quality, fromFrame, toFrame);
+    }
+
     @Override
     public void crossFade(WavData other, int startFrame) {
         if (checkUnlocked())
@@ -136,12 +168,30 @@ public class LockableWavData extends WavData {
             super.trimSilence(minAmp);
     }
 
+    @Override
+    public void processBlocks(BlockKernel kernel, int startFrame, int endFrame) {
+        if (checkUnlocked())
+            super.processBlocks(kernel, startFrame, endFrame);
+    }
+
     @Override
     public void reverse() {
         if (checkUnlocked())
             super.reverse();
     }
 
+    @Override
+    public void setSample(int channel, int frame, double amp) {
+        if (checkUnlocked())
+            super.setSample(channel, frame, amp);
+    }
+
+    @Override
+    public void setSamples(int channel, int startFrame, double[] src, int offset, int length) {
+        if (checkUnlocked())
+            super.setSamples(channel, startFrame, src, offset, length);
+    }
+
     private boolean checkUnlocked() {
         if (isLocked()) {
             Throwable thr = new Throwable();
@@ -0,0 +1,264 @@
+package software.blob.audio.wave;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bulk PCM decoder which reads the data chunk of a wav file through memory-mapped buffers
+ * Frames are decoded a block at a time straight from the mapping instead of byte-by-byte
+ * like {@link WavFile#readFrames(double[][], int, int)}
+ * Reads are random access and may be performed by multiple threads at once
+ */
+public class MappedWavReader implements Closeable {
+
+    // Number of frames decoded per block
+    private static final int BLOCK_FRAMES = 4096;
+
+    // Maximum size of a single mapping (must fit in an int)
+    private static final long MAX_WINDOW_BYTES = 1L << 30;
+
+    private final File file;
+    private final int channels, sampleRate, validBits, bytesPerSample, blockAlign;
+    private final long numFrames, dataOffset;
+    private final boolean floatingPoint;
+    private final double floatScale, floatOffset;
+    private final long framesPerWindow;
+    private final MappedByteBuffer[] windows;
+    private FileChannel channel;
+
+    /**
+     * Open a wav file for mapped reading
+     * @param file Wav file
+     * @throws IOException Failed to read or map the file
+     * @throws WavFileException Invalid or unsupported wav file
+     */
+    public MappedWavReader(File file) throws IOException, WavFileException {
+        WavFile wavFile = WavFile.openWavFile(file);
+        try {
+            if (!isSupported(wavFile))
+                throw new WavFileException("Unsupported sample format for mapped reading: "
+                        + wavFile.getValidBits() + "-bit");
+            this.file = file;
+            this.channels = wavFile.getNumChannels();
+            this.sampleRate = (int) wavFile.getSampleRate();
+            this.numFrames = wavFile.getNumFrames();
+            this.validBits = wavFile.getValidBits();
+            this.bytesPerSample = wavFile.getBytesPerSample();
+            this.blockAlign = wavFile.getBlockAlign();
+            this.dataOffset = wavFile.getDataOffset();
+            this.floatingPoint = wavFile.isFloatingPoint();
+            this.floatScale = wavFile.getFloatScale();
+            this.floatOffset = wavFile.getFloatOffset();
+        } finally {
+            wavFile.close();
+        }
+
+        this.framesPerWindow = MAX_WINDOW_BYTES / this.blockAlign;
+        this.windows = new MappedByteBuffer[(int) ((this.numFrames + this.framesPerWindow - 1)
+                / this.framesPerWindow)];
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Check if a wav file's sample format can be decoded by this reader
+     * @param wavFile Opened wav file
+     * @return True if supported
+     */
+    public static boolean isSupported(WavFile wavFile) {
+        // Only whole-byte samples where the block is the interleaved frame
+        int bps = wavFile.getBytesPerSample();
+        if (wavFile.getBlockAlign() != bps * wavFile.getNumChannels())
+            return false;
+        if (wavFile.isFloatingPoint())
+            return bps == 4;
+        return bps >= 1 && bps <= 4;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getNumChannels() {
+        return channels;
+    }
+
+    public long getNumFrames() {
+        return numFrames;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getValidBits() {
+        return validBits;
+    }
+
+    /**
+     * Decode frames into per-channel sample arrays
+     * @param startFrame First frame to read
+     * @param samples Sample output [channel][frame]
+     * @param offset Frame offset within the output arrays
+     * @param numFrames Number of frames to read
+     * @return Number of frames read
+     * @throws IOException Failed to map the file
+     */
+    public int readFrames(long startFrame, double[][] samples, int offset, int numFrames) throws IOException {
+        numFrames = (int) Math.max(0, Math.min(numFrames, this.numFrames - startFrame));
+        int read = 0;
+        while (read < numFrames) {
+            long frame = startFrame + read;
+            int w = (int) (frame / framesPerWindow);
+            long windowStart = w * framesPerWindow;
+            int count = (int) Math.min(numFrames - read, windowStart + framesPerWindow - frame);
+
+            // Each call works on its own view so concurrent reads don't share a position
+            ByteBuffer buf = getWindow(w).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            buf.position((int) ((frame - windowStart) * blockAlign));
+            decode(buf, samples, offset + read, count);
+            read += count;
+        }
+        return read;
+    }
+
+    /**
+     * Decode the entire data chunk
+     * @return Samples [channel][frame]
+     * @throws IOException Failed to map the file
+     */
+    public double[][] readAll() throws IOException {
+        if (numFrames > Integer.MAX_VALUE)
+            throw new IOException("Wav file is too large to load: " + file);
+        double[][] samples = new double[channels][(int) numFrames];
+        readFrames(0, samples, 0, (int) numFrames);
+        return samples;
+    }
+
+    /**
+     * Map the entire data chunk up front
+     * Once mapped, frames remain readable after the reader is closed
+     * @throws IOException Failed to map the file
+     */
+    public void map() throws IOException {
+        for (int w = 0; w < windows.length; w++)
+            getWindow(w);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private synchronized MappedByteBuffer getWindow(int index) throws IOException {
+        MappedByteBuffer window = windows[index];
+        if (window == null) {
+            if (channel == null)
+                throw new IOException("Reader is closed: " + file);
+            long start = index * framesPerWindow;
+            long frames = Math.min(framesPerWindow, numFrames - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    dataOffset + start * blockAlign, frames * blockAlign);
+            windows[index] = window;
+        }
+        return window;
+    }
+
+    /**
+     * Decode interleaved frames from a little-endian buffer
+     * @param buf Buffer positioned at the first frame
+     * @param samples Sample output [channel][frame]
+     * @param offset Frame offset within the output arrays
+     * @param numFrames Number of frames to decode
+     */
+    private void decode(ByteBuffer buf, double[][] samples, int offset, int numFrames) {
+        int blockFrames = Math.min(numFrames, BLOCK_FRAMES);
+        int blockSize = blockFrames * channels;
+        switch (bytesPerSample) {
+            case 1: {
+                byte[] block = new byte[blockSize];
+                for (int f = 0; f < numFrames; f += blockFrames) {
+                    int frames = Math.min(blockFrames, numFrames - f);
+                    buf.get(block, 0, frames * channels);
+                    for (int c = 0; c < channels; c++) {
+                        double[] out = samples[c];
+                        for (int i = 0, s = c; i < frames; i++, s += channels)
+                            out[offset + f + i] = floatOffset + (block[s] & 0xFF) / floatScale;
+                    }
+                }
+                break;
+            }
+            case 2: {
+                short[] block = new short[blockSize];
+                ShortBuffer sb = buf.asShortBuffer();
+                double scale = 1d / floatScale;
+                for (int f = 0; f < numFrames; f += blockFrames) {
+                    int frames = Math.min(blockFrames, numFrames - f);
+                    sb.get(block, 0, frames * channels);
+                    for (int c = 0; c < channels; c++) {
+                        double[] out = samples[c];
+                        for (int i = 0, s = c; i < frames; i++, s += channels)
+                            out[offset + f + i] = block[s] * scale;
+                    }
+                }
+                break;
+            }
+            case 3: {
+                byte[] block = new byte[blockSize * 3];
+                double scale = 1d / floatScale;
+                for (int f = 0; f < numFrames; f += blockFrames) {
+                    int frames = Math.min(blockFrames, numFrames - f);
+                    buf.get(block, 0, frames * channels * 3);
+                    for (int c = 0; c < channels; c++) {
+                        double[] out = samples[c];
+                        for (int i = 0, b = c * 3; i < frames; i++, b += blockAlign) {
+                            int v = (block[b] & 0xFF) | (block[b + 1] & 0xFF) << 8 | block[b + 2] << 16;
+                            out[offset + f + i] = v * scale;
+                        }
+                    }
+                }
+                break;
+            }
+            case 4: {
+                if (floatingPoint) {
+                    float[] block = new float[blockSize];
+                    FloatBuffer fb = buf.asFloatBuffer();
+                    for (int f = 0; f < numFrames; f += blockFrames) {
+                        int frames = Math.min(blockFrames, numFrames - f);
+                        fb.get(block, 0, frames * channels);
+                        for (int c = 0; c < channels; c++) {
+                            double[] out = samples[c];
+                            for (int i = 0, s = c; i < frames; i++, s += channels)
+                                out[offset + f + i] = block[s];
+                        }
+                    }
+                } else {
+                    int[] block = new int[blockSize];
+                    IntBuffer ib = buf.asIntBuffer();
+                    double scale = 1d / floatScale;
+                    for (int f = 0; f < numFrames; f += blockFrames) {
+                        int frames = Math.min(blockFrames, numFrames - f);
+                        ib.get(block, 0, frames * channels);
+                        for (int c = 0; c < channels; c++) {
+                            double[] out = samples[c];
+                            for (int i = 0, s = c; i < frames; i++, s += channels)
+                                out[offset + f + i] = block[s] * scale;
+                        }
+                    }
+                }
+                break;
+            }
+        }
+    }
+}
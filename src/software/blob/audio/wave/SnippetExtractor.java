@@ -71,7 +71,7 @@ public class SnippetExtractor {
             boolean silent = true;
             if (!end) {
                 for (int c = 0; c < wav.channels; c++) {
-                    if (Math.abs(wav.samples[c][f]) > minAmp) {
+                    if (Math.abs(wav.getSample(c, f)) > minAmp) {
                         silent = false;
                         break;
                     }
@@ -1,10 +1,21 @@
 package software.blob.audio.wave;
 
-import software.blob.audio.util.Misc;
+import software.blob.audio.thread.WavDecodeTask;
+import software.blob.audio.thread.WavExecutor;
+import software.blob.audio.thread.WavProcessorService;
+import software.blob.audio.wave.resample.Resampler;
+import software.blob.audio.wave.storage.DoubleSampleStorage;
+import software.blob.audio.wave.storage.PagedSampleStorage;
+import software.blob.audio.wave.storage.SampleStorage;
+import software.blob.audio.wave.storage.SampleStorageType;
+import software.blob.audio.wave.storage.SliceSampleStorage;
 import software.blob.ui.util.FileUtils;
 import software.blob.ui.util.Log;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Main container for waveform data
@@ -14,14 +25,27 @@ public class WavData {
     private static final int BUF_SIZE = 8192;
     private static final double EPSILON = 1e-4;
 
+    // Files with at least this many samples are decoded on multiple threads
+    private static final long PARALLEL_MIN_SAMPLES = 1 << 22;
+
+    // Minimum number of frames decoded by each thread
+    private static final int PARALLEL_MIN_FRAMES = 1 << 16;
+
     public File file;
     public String name;
     public int channels, numFrames, sampleRate;
     public double duration;
-    public double[][] samples;
     public int loopStartFrame, loopEndFrame;
     public boolean randomStart;
 
+    // Sample data [channel][frame]
+    // The storage may be longer than numFrames (see getCapacity)
+    protected SampleStorage storage;
+
+    // Storage allocated by ensureCapacity - spare capacity is only written to
+    // while the storage is still this instance, so pointers sharing it are never affected
+    private SampleStorage growable;
+
     protected WavData() {
     }
 
@@ -30,10 +54,47 @@ public class WavData {
     }
 
     public WavData(File file) throws Exception {
+        this(file, false);
+    }
+
+    /**
+     * Load wav data from a file
+     * @param file Wav file
+     * @param paged True to leave the samples in the file and decode them on demand
+     *              instead of loading the whole file into memory
+     *              Paged data is copied into memory the first time it's modified
+     */
+    public WavData(File file, boolean paged) throws Exception {
+        this(file, paged, null);
+    }
+
+    /**
+     * Load wav data from a file, splitting the decode across a thread pool
+     * @param file Wav file
+     * @param service Processor service to decode on
+     */
+    public WavData(File file, WavProcessorService service) throws Exception {
+        this(file, false, service);
+    }
+
+    private WavData(File file, boolean paged, WavProcessorService service) throws Exception {
 
         this.file = file;
         this.name = FileUtils.stripExtension(file);
 
+        if (paged) {
+            try {
+                PagedSampleStorage pages = new PagedSampleStorage(file);
+                this.channels = pages.getChannels();
+                setSampleRate(pages.getSampleRate());
+                setNumFrames(pages.getLength());
+                this.storage = pages;
+                return;
+            } catch (Exception e) {
+                Log.w("Failed to page " + file + ", loading into memory", e);
+            }
+        }
+
         // Open the wav file specified as the first argument
         WavFile wavFile = WavFile.openWavFile(file);
 
@@ -41,13 +102,31 @@ public class WavData {
         this.channels = wavFile.getNumChannels();
         setSampleRate((int) wavFile.getSampleRate());
         setNumFrames((int) wavFile.getNumFrames());
-        this.samples = new double[this.channels][this.numFrames];
+        double[][] samples = new double[this.channels][this.numFrames];
+        this.storage = new DoubleSampleStorage(samples);
+
+        // Decode straight from a mapping of the file when the format allows it
+        if (MappedWavReader.isSupported(wavFile)) {
+            wavFile.close();
+            try (MappedWavReader reader = new MappedWavReader(file)) {
+                if (service == null && (long) this.numFrames * this.channels >= PARALLEL_MIN_SAMPLES)
+                    service = new WavProcessorService(WavExecutor.Priority.INTERACTIVE);
+                if (service != null)
+                    decodeParallel(reader, samples, this.numFrames, service);
+                else
+                    reader.readFrames(0, samples, 0, this.numFrames);
+                return;
+            } catch (Exception e) {
+                Log.w("Failed to map " + file + ", falling back to stream reader", e);
+            }
+            wavFile = WavFile.openWavFile(file);
+        }
 
         int framesRead;
         int offset = 0;
         do {
             // Read frames into buffer
-            framesRead = wavFile.readFrames(this.samples, offset, BUF_SIZE);
+            framesRead = wavFile.readFrames(samples, offset, BUF_SIZE);
             offset += framesRead;
         } while (framesRead != 0);
 
@@ -55,18 +134,46 @@ public class WavData {
         wavFile.close();
     }
 
+    /**
+     * Decode a mapped wav file by splitting the data chunk into ranges of frames
+     * Each range is decoded on its own thread into a disjoint range of the output
+     * @param reader Mapped wav reader
+     * @param samples Output samples [channel][frame]
+     * @param numFrames Number of frames to decode
+     * @param service Processor service to decode on
+     * @throws IOException Failed to decode one of the ranges
+     */
+    private static void decodeParallel(MappedWavReader reader, double[][] samples, int numFrames,
+                                       WavProcessorService service) throws IOException {
+        int chunks = service.getNumThreads() * 4;
+        int chunkFrames = Math.max(PARALLEL_MIN_FRAMES, (numFrames + chunks - 1) / chunks);
+        List<WavDecodeTask> tasks = new ArrayList<>();
+        for (int f = 0; f < numFrames; f += chunkFrames)
+            tasks.add(new WavDecodeTask(reader, samples, f, Math.min(chunkFrames, numFrames - f)));
+        service.execute(tasks);
+        for (WavDecodeTask task : tasks) {
+            if (task.getError() != null)
+                throw task.getError();
+        }
+    }
+
+    /**
+     * Copy a range of another wav
+     * The samples are shared with the other wav until either one is modified
+     * @param other Wav data to copy
+     * @param startFrame First frame to copy
+     * @param numFrames Number of frames to copy
+     */
     public WavData(WavData other, int startFrame, int numFrames) {
         this.name = other.name;
-        startFrame = Math.max(0, startFrame);
-        numFrames = Math.min(other.numFrames - startFrame, numFrames);
+        startFrame = Math.min(Math.max(0, startFrame), other.numFrames);
+        numFrames = Math.max(0, Math.min(other.numFrames - startFrame, numFrames));
         this.channels = other.channels;
         setSampleRate(other.sampleRate);
         setNumFrames(numFrames);
         setRandomStart(other.randomStart);
         setLoopFrames(other.loopStartFrame, other.loopEndFrame);
-        this.samples = new double[this.channels][this.numFrames];
-        for (int c = 0; c < this.channels; c++)
-            System.arraycopy(other.samples[c], startFrame, this.samples[c], 0, this.numFrames);
+        this.storage = other.storage.slice(startFrame, this.numFrames);
     }
 
     public WavData(WavData other) {
@@ -74,17 +181,32 @@ public class WavData {
     }
 
     public WavData(double[][] samples, int sampleRate) {
-        this.channels = samples.length;
+        this(new DoubleSampleStorage(samples), sampleRate);
+    }
+
+    /**
+     * Create wav data backed by existing sample storage
+     * This will NOT copy the storage
+     * @param storage Sample storage
+     * @param numFrames Number of frames in use (may be less than the storage length)
+     * @param sampleRate Sample rate
+     */
+    public WavData(SampleStorage storage, int numFrames, int sampleRate) {
+        this.channels = storage.getChannels();
         setSampleRate(sampleRate);
-        setNumFrames(samples[0].length);
-        this.samples = samples;
+        setNumFrames(Math.min(numFrames, storage.getLength()));
+        this.storage = storage;
+    }
+
+    public WavData(SampleStorage storage, int sampleRate) {
+        this(storage, storage.getLength(), sampleRate);
     }
 
     public WavData(int channels, int numFrames, int sampleRate) {
         this.channels = channels;
         setSampleRate(sampleRate);
         setNumFrames(numFrames);
-        this.samples = new double[channels][numFrames];
+        this.storage = new DoubleSampleStorage(channels, numFrames);
     }
 
     public WavData(int channels, double duration, int sampleRate) {
@@ -101,41 +223,102 @@ public class WavData {
         this.duration = getTime(numFrames);
     }
 
+    /**
+     * Get the storage backing the samples of this wav
+     * @return Sample storage
+     */
+    public SampleStorage getStorage() {
+        return this.storage;
+    }
+
+    /**
+     * Move the samples of this wav to a different storage backend
+     * @param type Storage type
+     */
+    public void setStorageType(SampleStorageType type) {
+        if (type == null || type.isInstance(this.storage))
+            return;
+        SampleStorage buf = type.allocate(this.channels, this.numFrames);
+        for (int c = 0; c < this.channels; c++)
+            SampleStorage.copy(this.storage, c, 0, buf, c, 0, this.numFrames);
+        this.storage = buf;
+    }
+
+    /**
+     * Get the number of frames the current storage can hold without reallocating
+     * @return Capacity in frames
+     */
+    public int getCapacity() {
+        return this.storage.getLength();
+    }
+
+    /**
+     * Make sure this wav can hold at least the given number of frames
+     * Storage grows geometrically so repeated appends and mixes past the end
+     * only copy the existing samples O(log n) times
+     * @param minFrames Minimum number of frames
+     */
+    public void ensureCapacity(int minFrames) {
+        if (canGrowInPlace(minFrames))
+            return;
+        int newCapacity = Math.max(minFrames, this.numFrames + (this.numFrames >> 1));
+        if (newCapacity < 0)
+            newCapacity = minFrames;
+        SampleStorage buf = this.storage.allocate(this.channels, newCapacity);
+        for (int c = 0; c < this.channels; c++)
+            SampleStorage.copy(this.storage, c, 0, buf, c, 0, this.numFrames);
+        this.storage = this.growable = buf;
+    }
+
+    /**
+     * Release any spare capacity so the storage is exactly as long as the audio
+     */
+    public void trimToSize() {
+        if (this.storage.getLength() > this.numFrames && !this.storage.isReadOnly())
+            this.storage = this.storage.copy(0, this.numFrames);
+    }
+
+    private boolean canGrowInPlace(int minFrames) {
+        return this.storage == this.growable && minFrames <= this.storage.getLength();
+    }
+
+    /**
+     * Get the sample storage for modification
+     * Read-only storage, or storage that other wavs have a slice of,
+     * is replaced with a writable copy first
+     * @return Writable sample storage
+     */
+    protected SampleStorage getWritableStorage() {
+        if (this.storage.isReadOnly() || this.storage.isShared())
+            this.storage = this.storage.copy(0, this.numFrames);
+        return this.storage;
+    }
+
     /**
      * Set the sample rate of this audio
      * Sample rate change will be applied to existing sample data, if it exists
      * @param sampleRate Sample rate
+     * @param quality Resampling quality
      */
-    public void setSampleRate(int sampleRate) {
+    public void setSampleRate(int sampleRate, Resampler.Quality quality) {
         if (this.sampleRate == sampleRate)
             return;
 
         int newSize = 0;
-        if (this.samples != null) {
+        if (this.storage != null) {
             // Need to modify sample data to accord with the new sample rate
-            newSize = (int) Math.round(sampleRate * this.duration);
-            double[][] buf = new double[this.channels][newSize];
-            for (int c = 0; c < this.channels; c++) {
-                for (int dstFrame = 0; dstFrame < newSize; dstFrame++) {
-                    double srcFrame = ((double) dstFrame / sampleRate) * this.sampleRate;
-                    int f1 = Misc.clamp((int) Math.floor(srcFrame), 0, this.numFrames - 1);
-                    int f2 = Misc.clamp((int) Math.ceil(srcFrame), 0, this.numFrames - 1);
-                    double s;
-                    if (f1 == f2)
-                        s = this.samples[c][f1];
-                    else {
-                        double interp = srcFrame - f1;
-                        s = this.samples[c][f1] * (1 - interp) + this.samples[c][f2] * interp;
-                    }
-                    buf[c][dstFrame] = s;
-                }
-            }
-            this.samples = buf;
+            Resampler resampler = Resampler.get(this.sampleRate, sampleRate, quality);
+            this.storage = resampler.process(this.storage, this.numFrames);
+            newSize = this.storage.getLength();
         }
         this.sampleRate = sampleRate;
         setNumFrames(newSize);
     }
 
+    public void setSampleRate(int sampleRate) {
+        setSampleRate(sampleRate, Resampler.Quality.DRAFT);
+    }
+
     /**
      * Set the loop start and end frame
      * @param startFrame Frame to begin looping
@@ -180,6 +363,26 @@ public class WavData {
         return (double) frame / this.sampleRate;
     }
 
+    /**
+     * Get a single sample
+     * @param channel Channel number
+     * @param frame Frame number
+     * @return Sample amplitude
+     */
+    public double getSample(int channel, int frame) {
+        return this.storage.get(channel, frame);
+    }
+
+    /**
+     * Set a single sample
+     * @param channel Channel number
+     * @param frame Frame number
+     * @param amp Sample amplitude
+     */
+    public void setSample(int channel, int frame, double amp) {
+        getWritableStorage().set(channel, frame, amp);
+    }
+
     /**
      * Create a copy of this WAV's samples at a given offset/length
      * @param channel Channel number
@@ -189,11 +392,55 @@ public class WavData {
      */
     public double[] copySamples(int channel, int startFrame, int length) {
         double[] copy = new double[length];
-        length = Math.min(length, this.numFrames - startFrame);
-        System.arraycopy(this.samples[channel], startFrame, copy, 0, length);
+        copySamples(channel, startFrame, copy, 0, length);
         return copy;
     }
 
+    /**
+     * Copy this WAV's samples at a given offset/length into an existing array
+     * @param channel Channel number
+     * @param startFrame Frame to start copying from
+     * @param dst Destination array
+     * @param offset Offset within the destination array
+     * @param length Length to copy
+     * @return Number of frames copied
+     */
+    public int copySamples(int channel, int startFrame, double[] dst, int offset, int length) {
+        length = Math.min(length, this.numFrames - startFrame);
+        if (length > 0)
+            this.storage.read(channel, startFrame, dst, offset, length);
+        return Math.max(0, length);
+    }
+
+    /**
+     * Overwrite this WAV's samples at a given offset/length
+     * @param channel Channel number
+     * @param startFrame Frame to start writing at
+     * @param src Source array
+     * @param offset Offset within the source array
+     * @param length Length to write
+     */
+    public void setSamples(int channel, int startFrame, double[] src, int offset, int length) {
+        length = Math.min(length, this.numFrames - startFrame);
+        if (length > 0)
+            getWritableStorage().write(channel, startFrame, src, offset, length);
+    }
+
+    /**
+     * Get all samples as arrays
+     * If the samples aren't already stored in arrays of the exact size a copy is made
+     * The arrays may be shared with other wavs, so they shouldn't be modified
+     * @return Samples [channel][frame]
+     */
+    public double[][] getSamples() {
+        if (this.storage instanceof DoubleSampleStorage && this.storage.getLength() == this.numFrames)
+            return ((DoubleSampleStorage) this.storage).getData();
+        double[][] samples = new double[this.channels][this.numFrames];
+        for (int c = 0; c < this.channels; c++)
+            this.storage.read(c, 0, samples[c], 0, this.numFrames);
+        return samples;
+    }
+
     /**
      * Pad the start or end of the clip with silence
      * @param numFrames Number of frames to add
@@ -202,12 +449,21 @@ public class WavData {
         if (numFrames <= 0)
             return;
         int newSize = this.numFrames + numFrames;
-        int start = end ? 0 : numFrames;
-        double[][] buf = new double[this.channels][newSize];
-        for (int c = 0; c < this.channels; c++)
-            System.arraycopy(this.samples[c], 0, buf[c], start, this.numFrames);
+        if (end) {
+            // Grow into spare capacity, making sure it's silent
+            boolean inPlace = canGrowInPlace(newSize);
+            ensureCapacity(newSize);
+            if (inPlace) {
+                for (int c = 0; c < this.channels; c++)
+                    this.storage.clear(c, this.numFrames, numFrames);
+            }
+        } else {
+            SampleStorage buf = this.storage.allocate(this.channels, newSize);
+            for (int c = 0; c < this.channels; c++)
+                SampleStorage.copy(this.storage, c, 0, buf, c, numFrames, this.numFrames);
+            this.storage = buf;
+        }
         setNumFrames(newSize);
-        this.samples = buf;
     }
 
     public void pad(int numFrames) {
@@ -223,23 +479,19 @@ public class WavData {
     public void padLoop(int startFrame, int endFrame, int numFrames) {
         if (numFrames <= 0)
             return;
-        int newSize = this.numFrames + numFrames;
         startFrame = Math.max(startFrame, 0);
         endFrame = Math.min(endFrame, this.numFrames);
         int loopSize = endFrame - startFrame;
-        double[][] buf = new double[this.channels][newSize];
+        if (loopSize <= 0)
+            return;
+        int oldSize = this.numFrames;
+        int newSize = oldSize + numFrames;
+        ensureCapacity(newSize);
         for (int c = 0; c < this.channels; c++) {
-            int remFrames = newSize;
-            int pos = 0;
-            while (remFrames > 0) {
-                int len = Math.min(remFrames, loopSize);
-                System.arraycopy(this.samples[c], startFrame, buf[c], pos, len);
-                remFrames -= len;
-                pos += len;
-            }
+            for (int pos = oldSize; pos < newSize; pos += loopSize)
+                SampleStorage.copy(this.storage, c, startFrame, this.storage, c, pos, Math.min(loopSize, newSize - pos));
         }
         setNumFrames(newSize);
-        this.samples = buf;
     }
 
     public void padLoop(int numFrames) {
@@ -261,7 +513,7 @@ public class WavData {
         int start = this.numFrames;
         pad(other.numFrames);
         for (int c = 0; c < this.channels; c++)
-            System.arraycopy(other.samples[c], 0, this.samples[c], start, other.numFrames);
+            SampleStorage.copy(other.storage, c, 0, this.storage, c, start, other.numFrames);
     }
 
     /**
@@ -286,16 +538,85 @@ public class WavData {
         }
 
         // Mix
-        for (int c = 0; c < this.channels; c++) {
-            for (int s1 = startFrame, s2 = oStart; s1 < endFrame; s1++, s2++)
-                this.samples[c][s1] += other.samples[c][s2];
-        }
+        final SampleStorage dst = getWritableStorage();
+        final int shift = startFrame - oStart;
+        other.forEachBlock((c, f, block, offset, length) -> {
+            dst.add(c, f + shift, block, offset, length);
+            return true;
+        }, oStart, oStart + endFrame - startFrame);
     }
 
     public void mix(WavData other, int startFrame) {
         mix(other, startFrame, other.numFrames);
     }
 
+    /**
+     * Mix another audio track with this track at a given gain
+     * Sample rate conversion is done block by block as the track is mixed in,
+     * so the other track is never copied (unless it has more channels than this track)
+     * @param other Audio track
+     * @param startFrame Frame to begin mixing in the other track
+     * @param gain Amplitude multiplier for the other track
+     * @param quality Sample rate conversion quality
+     */
+    public void mix(WavData other, int startFrame, double gain, Resampler.Quality quality) {
+        int outFrames = other.sampleRate != this.sampleRate
+                ? Resampler.get(other.sampleRate, this.sampleRate, quality).getOutputLength(other.numFrames)
+                : other.numFrames;
+
+        // Resize audio if we can't already fit the full track
+        int endFrame = startFrame + outFrames;
+        if (endFrame > this.numFrames)
+            pad(endFrame - this.numFrames);
+
+        mix(other, startFrame, gain, quality, 0, this.numFrames);
+    }
+
+    /**
+     * Mix the part of another audio track that falls within a range of this track
+     * This track is never resized, so a long timeline can be mixed one block at a time
+     * @param other Audio track
+     * @param startFrame Frame where the other track begins (may be outside the range)
+     * @param gain Amplitude multiplier for the other track
+     * @param quality Sample rate conversion quality
+     * @param fromFrame First frame of this track to mix into
+     * @param toFrame Frame following the last frame to mix into
+     */
+    public void mix(WavData other, int startFrame, double gain, Resampler.Quality quality,
+                    int fromFrame, int toFrame) {
+        Resampler resampler = other.sampleRate != this.sampleRate
+                ? Resampler.get(other.sampleRate, this.sampleRate, quality) : null;
+        int outFrames = resampler != null ? resampler.getOutputLength(other.numFrames) : other.numFrames;
+        int mixStart = Math.max(Math.max(startFrame, fromFrame), 0);
+        int mixEnd = Math.min(Math.min(startFrame + outFrames, toFrame), this.numFrames);
+        if (mixStart >= mixEnd)
+            return;
+
+        if (other.channels > this.channels) {
+            other = new WavData(other);
+            other.setChannels(this.channels);
+        }
+
+        // Mix - extra channels repeat the last channel of the other track
+        SampleStorage dst = getWritableStorage();
+        double[] buf = new double[Math.min(BUF_SIZE, mixEnd - mixStart)];
+        for (int c = 0; c < this.channels; c++) {
+            int oc = Math.min(c, other.channels - 1);
+            for (int s1 = mixStart, s2 = mixStart - startFrame; s1 < mixEnd; s1 += buf.length, s2 += buf.length) {
+                int len = Math.min(buf.length, mixEnd - s1);
+                if (resampler != null)
+                    resampler.process(other.storage, oc, other.numFrames, buf, 0, len, s2 * resampler.getStep());
+                else
+                    other.storage.read(oc, s2, buf, 0, len);
+                if (gain != 1) {
+                    for (int i = 0; i < len; i++)
+                        buf[i] *= gain;
+                }
+                dst.add(c, s1, buf, 0, len);
+            }
+        }
+    }
+
     public void mix(WavData other, double startTime, double duration) {
         mix(other, getFrame(startTime), getFrame(duration));
     }
@@ -329,18 +650,25 @@ public class WavData {
         pad(padding);
 
         // Mix the overlapping portion of the two clips
-        final double[][] osamples = other.samples;
-        forEachSample((c, f, amp) -> {
-            int of = f - startFrame;
-            double mix = (double) of / overlap;
-            samples[c][f] = (amp * (1 - mix)) + (osamples[c][of] * mix);
+        final SampleStorage src = other.storage;
+        final double[] fade = new double[Math.min(BUF_SIZE, overlap)];
+        processBlocks((c, f, block, offset, length) -> {
+            for (int i = 0; i < length; i += fade.length) {
+                int len = Math.min(fade.length, length - i);
+                src.read(c, f + i - startFrame, fade, 0, len);
+                for (int j = 0; j < len; j++) {
+                    double mix = (double) (f + i + j - startFrame) / overlap;
+                    int b = offset + i + j;
+                    block[b] = (block[b] * (1 - mix)) + (fade[j] * mix);
+                }
+            }
             return true;
         }, startFrame, endFrame);
 
         // Memcpy the rest of the other clip after the fade
         if (padding > 0) {
             for (int c = 0; c < this.channels; c++)
-                System.arraycopy(osamples[c], overlap, this.samples[c], endFrame, padding);
+                SampleStorage.copy(src, c, overlap, this.storage, c, endFrame, padding);
         }
     }
 
@@ -351,13 +679,12 @@ public class WavData {
      */
     public void trim(int startFrame, int numFrames) {
         numFrames = Math.max(0, Math.min(this.numFrames - startFrame, numFrames));
-        double[][] buf = new double[this.channels][numFrames];
-        if (numFrames > 0) {
-            for (int c = 0; c < this.channels; c++)
-                System.arraycopy(this.samples[c], startFrame, buf[c], 0, numFrames);
-        }
+
+        // Read-only samples don't need to be copied - just narrow the view
+        SampleStorage buf = this.storage.isReadOnly() ? this.storage.slice(startFrame, numFrames)
+                : this.storage.copy(startFrame, numFrames);
         setNumFrames(numFrames);
-        this.samples = buf;
+        this.storage = buf;
     }
 
     /**
@@ -383,28 +710,29 @@ public class WavData {
         if (this.channels == numChannels || numChannels < 1)
             return;
 
-        double[][] newSamples = new double[numChannels][this.numFrames];
+        SampleStorage newSamples = this.storage.allocate(numChannels, this.numFrames);
 
         if (numChannels > this.channels) {
             // Copy last channel into additional channels
             for (int c = 0; c < numChannels; c++)
-                System.arraycopy(this.samples[this.channels-1], 0, newSamples[c], 0, this.numFrames);
+                SampleStorage.copy(this.storage, this.channels - 1, 0, newSamples, c, 0, this.numFrames);
         } else {
             // Mix down last channel into remaining
             int lastChannel = numChannels - 1;
             double ampMulti = 1d / (this.channels - lastChannel);
             for (int c = 0; c < this.channels; c++) {
                 if (c < lastChannel)
-                    System.arraycopy(this.samples[c], 0, newSamples[c], 0, this.numFrames);
+                    SampleStorage.copy(this.storage, c, 0, newSamples, c, 0, this.numFrames);
                 else {
                     for (int f = 0; f < this.numFrames; f++)
-                        newSamples[lastChannel][f] += this.samples[c][f] * ampMulti;
+                        newSamples.set(lastChannel, f, newSamples.get(lastChannel, f)
+                                + this.storage.get(c, f) * ampMulti);
                 }
             }
         }
 
         // Finish
-        this.samples = newSamples;
+        this.storage = newSamples;
         this.channels = numChannels;
     }
 
@@ -413,8 +741,9 @@ public class WavData {
      * @param factor Multiplication factor
      */
     public void multiply(final double factor, int startFrame, int endFrame) {
-        forEachSample((c, f, amp) -> {
-            this.samples[c][f] *= factor;
+        processBlocks((c, f, block, offset, length) -> {
+            for (int i = offset; i < offset + length; i++)
+                block[i] *= factor;
             return true;
         }, startFrame, endFrame);
     }
@@ -431,8 +760,11 @@ public class WavData {
      */
     public double getPeakAmplitude(int startFrame, int endFrame) {
         final double[] max = {-Double.MAX_VALUE};
-        forEachSample((c, f, amp) -> {
-            max[0] = Math.max(max[0], Math.abs(amp));
+        forEachBlock((c, f, block, offset, length) -> {
+            double peak = max[0];
+            for (int i = offset; i < offset + length; i++)
+                peak = Math.max(peak, Math.abs(block[i]));
+            max[0] = peak;
             return true;
         }, startFrame, endFrame);
         return max[0];
@@ -466,18 +798,30 @@ public class WavData {
      * @return True if altitude was clamped at some point
      */
     public boolean clampAmplitude(int startFrame, int endFrame) {
+        // Scan first so samples that are already in range aren't copied or rewritten
         final boolean[] clamped = {false};
-        forEachSample((c, f, amp) -> {
-            if (amp > 1) {
-                samples[c][f] = 1;
-                clamped[0] = true;
-            } else if (amp < -1) {
-                samples[c][f] = -1;
-                clamped[0] = true;
+        forEachBlock((c, f, block, offset, length) -> {
+            for (int i = offset; i < offset + length; i++) {
+                if (block[i] > 1 || block[i] < -1) {
+                    clamped[0] = true;
+                    return false;
+                }
             }
             return true;
         }, startFrame, endFrame);
-        return clamped[0];
+        if (!clamped[0])
+            return false;
+
+        processBlocks((c, f, block, offset, length) -> {
+            for (int i = offset; i < offset + length; i++) {
+                if (block[i] > 1)
+                    block[i] = 1;
+                else if (block[i] < -1)
+                    block[i] = -1;
+            }
+            return true;
+        }, startFrame, endFrame);
+        return true;
     }
 
     public boolean clampAmplitude() {
@@ -503,7 +847,7 @@ public class WavData {
         int iter = forward ? 1 : -1;
         outer: for (int f = startFrame; forward ? f < endFrame : f > endFrame; f += iter) {
             for (int c = 0; c < this.channels; c++) {
-                if (Math.abs(this.samples[c][f]) > minAmp)
+                if (Math.abs(this.storage.get(c, f)) > minAmp)
                     continue outer;
             }
             // All samples at zero
@@ -522,34 +866,27 @@ public class WavData {
      */
     public void trimSilence(double minAmp) {
         final double ma = Math.max(minAmp, 1e-9);
-        final int[][] bounds = new int[channels][2];
-        for (int c = 0; c < channels; c++)
-            bounds[c][0] = bounds[c][1] = -1;
-
-        // Find start trim
-        forEachSample((channel, frame, amp) -> {
-            if (amp >= ma && bounds[channel][0] == -1)
-                bounds[channel][0] = frame;
-            return true;
-        });
 
-        // Find end trim
-        forEachSample((channel, frame, amp) -> {
-            if (amp >= ma && bounds[channel][1] == -1)
-                bounds[channel][1] = frame;
+        // Find the first and last frame above the threshold on any channel
+        final int[] bounds = {-1, -1};
+        forEachBlock((c, f, block, offset, length) -> {
+            for (int i = 0; i < length; i++) {
+                if (block[offset + i] >= ma) {
+                    int frame = f + i;
+                    if (bounds[0] == -1 || frame < bounds[0])
+                        bounds[0] = frame;
+                    bounds[1] = Math.max(bounds[1], frame);
+                }
+            }
             return true;
-        }, numFrames - 1, 0);
+        });
 
-        int minStart = numFrames, maxEnd = 0;
-        for (int c = 0; c < channels; c++) {
-            minStart = Math.min(minStart, bounds[c][0]);
-            maxEnd = Math.max(maxEnd, bounds[c][1]);
-        }
+        int minStart = bounds[0], maxEnd = bounds[1];
         if (minStart == -1) {
             // Complete silence - trim out the whole thing
-            this.samples = new double[this.channels][0];
+            this.storage = this.storage.allocate(this.channels, 0);
             setNumFrames(0);
-        } else if (minStart >= 0 && maxEnd < numFrames - 1)
+        } else if (minStart > 0 || maxEnd < numFrames - 1)
             trim(minStart, maxEnd - minStart + 1);
     }
 
@@ -557,12 +894,122 @@ public class WavData {
      * Reverse the samples in this clip
      */
     public void reverse() {
-        double[][] buf = new double[this.channels][this.numFrames];
-        forEachSample((c, f, amp) -> {
-            buf[c][numFrames - f - 1] = amp;
+        final SampleStorage buf = this.storage.allocate(this.channels, this.numFrames);
+        final double[] rev = new double[Math.min(BUF_SIZE, this.numFrames)];
+        forEachBlock((c, f, block, offset, length) -> {
+            for (int i = 0; i < length; i += rev.length) {
+                int len = Math.min(rev.length, length - i);
+                for (int j = 0; j < len; j++)
+                    rev[len - 1 - j] = block[offset + i + j];
+                buf.write(c, numFrames - (f + i) - len, rev, 0, len);
+            }
             return true;
         });
-        this.samples = buf;
+        this.storage = buf;
+    }
+
+    /**
+     * Process a block of samples from one channel
+     */
+    public interface BlockKernel {
+
+        /**
+         * Called for each block of samples
+         * The block array may be the storage itself or a scratch buffer that's reused
+         * between calls, so it shouldn't be kept once the call returns
+         * @param channel Channel number
+         * @param frame Frame number of the first sample in the block
+         * @param block Samples
+         * @param offset Index of the first sample within the block array
+         * @param length Number of samples
+         * @return True to continue, false to stop
+         */
+        boolean process(int channel, int frame, double[] block, int offset, int length);
+    }
+
+    /**
+     * Read through the samples in blocks in channel-major order
+     * Heap storage is passed to the kernel directly; other storage is read into a scratch buffer
+     * The kernel must not modify the blocks (use {@link #processBlocks} instead)
+     * @param kernel Block kernel
+     * @param startFrame Start frame
+     * @param endFrame End frame (exclusive)
+     */
+    public void forEachBlock(BlockKernel kernel, int startFrame, int endFrame) {
+        startFrame = Math.max(0, startFrame);
+        endFrame = Math.min(this.numFrames, endFrame);
+        if (startFrame >= endFrame)
+            return;
+
+        // Read heap storage (or a slice of it) in place
+        SampleStorage src = this.storage;
+        int base = 0;
+        if (src instanceof SliceSampleStorage) {
+            base = ((SliceSampleStorage) src).getOffset();
+            src = ((SliceSampleStorage) src).getParent();
+        }
+        if (src instanceof DoubleSampleStorage) {
+            DoubleSampleStorage samples = (DoubleSampleStorage) src;
+            for (int c = 0; c < this.channels; c++) {
+                if (!kernel.process(c, startFrame, samples.getChannel(c), base + startFrame, endFrame - startFrame))
+                    return;
+            }
+            return;
+        }
+
+        double[] buf = new double[Math.min(BUF_SIZE, endFrame - startFrame)];
+        for (int c = 0; c < this.channels; c++) {
+            for (int f = startFrame; f < endFrame; f += buf.length) {
+                int len = Math.min(buf.length, endFrame - f);
+                this.storage.read(c, f, buf, 0, len);
+                if (!kernel.process(c, f, buf, 0, len))
+                    return;
+            }
+        }
+    }
+
+    public void forEachBlock(BlockKernel kernel) {
+        forEachBlock(kernel, 0, this.numFrames);
+    }
+
+    /**
+     * Modify the samples in blocks in channel-major order
+     * Changes the kernel makes to each block are written back to this wav
+     * @param kernel Block kernel
+     * @param startFrame Start frame
+     * @param endFrame End frame (exclusive)
+     */
+    public void processBlocks(BlockKernel kernel, int startFrame, int endFrame) {
+        startFrame = Math.max(0, startFrame);
+        endFrame = Math.min(this.numFrames, endFrame);
+        if (startFrame >= endFrame)
+            return;
+
+        SampleStorage dst = getWritableStorage();
+        if (dst instanceof DoubleSampleStorage) {
+            DoubleSampleStorage samples = (DoubleSampleStorage) dst;
+            for (int c = 0; c < this.channels; c++) {
+                if (!kernel.process(c, startFrame, samples.getChannel(c), startFrame, endFrame - startFrame))
+                    return;
+            }
+            return;
+        }
+
+        double[] buf = new double[Math.min(BUF_SIZE, endFrame - startFrame)];
+        for (int c = 0; c < this.channels; c++) {
+            for (int f = startFrame; f < endFrame; f += buf.length) {
+                int len = Math.min(buf.length, endFrame - f);
+                dst.read(c, f, buf, 0, len);
+                boolean resume = kernel.process(c, f, buf, 0, len);
+                dst.write(c, f, buf, 0, len);
+                if (!resume)
+                    return;
+            }
+        }
+    }
+
+    public void processBlocks(BlockKernel kernel) {
+        processBlocks(kernel, 0, this.numFrames);
     }
 
     /**
@@ -582,6 +1029,7 @@ public class WavData {
 
     /**
      * Iterate through each sample in the audio clip in channel-major order
+     * For bulk processing prefer {@link #forEachBlock}, which avoids a call per sample
      * @param iterator For-each iterator
      * @param startFrame Start frame
      * @param endFrame End frame
@@ -592,10 +1040,10 @@ public class WavData {
         for (int c = 0; c < this.channels; c++) {
             if (startFrame < endFrame) {
                 for (int f = startFrame; f < endFrame; f++)
-                    iterator.onSample(c, f, this.samples[c][f]);
+                    iterator.onSample(c, f, this.storage.get(c, f));
             } else {
                 for (int f = startFrame; f > endFrame; f--)
-                    iterator.onSample(c, f, this.samples[c][f]);
+                    iterator.onSample(c, f, this.storage.get(c, f));
             }
         }
     }
@@ -608,7 +1056,7 @@ public class WavData {
         if (channelNum < 0 || channelNum >= this.channels)
             return;
         for (int f = startFrame; f < endFrame; f++)
-            iterator.onSample(channelNum, f, this.samples[channelNum][f]);
+            iterator.onSample(channelNum, f, this.storage.get(channelNum, f));
     }
 
     public void forEachSample(ForEach iterator, int channelNum) {
@@ -618,9 +1066,10 @@ public class WavData {
     /**
      * Write this WAV data out to a file
      * @param file File to write to
+     * @param format Output sample format
      * @return True if successful
      */
-    public boolean writeToFile(File file) {
+    public boolean writeToFile(File file, WavWriter.Format format) {
 
         // Make sure the file ends in .wav
         String ext = FileUtils.getExtension(file);
@@ -629,27 +1078,23 @@ public class WavData {
             file = new File(file.getParent(), fName + ".wav");
         }
 
-        // Make sure there's no audio clipping since it won't save properly
-        if (clampAmplitude())
-            Log.w(file.getName() + " has audio clipping!");
+        try (WavWriter writer = new WavWriter(file, this.channels, this.sampleRate, format)) {
+            writer.write(this);
 
-        WavFile f = null;
-        try {
-            f = WavFile.newWavFile(file, this.channels, this.numFrames, 16, this.sampleRate);
-            f.writeFrames(this.samples, this.numFrames);
+            // Out of range samples are clipped by the writer
+            if (writer.getClippedSamples() > 0)
+                Log.w(file.getName() + " has audio clipping!");
             return true;
         } catch (Exception e) {
             Log.e("Failed to create output file: " + file, e);
             return false;
-        } finally {
-            try {
-                if (f != null)
-                    f.close();
-            } catch (Exception ignored) {
-            }
         }
     }
 
+    public boolean writeToFile(File file) {
+        return writeToFile(file, WavWriter.Format.PCM_16);
+    }
+
     /**
      * Join a set of audio tracks by assigning each track to a channel
      * Note: Sample rate must be the same between all tracks
@@ -683,7 +1128,7 @@ public class WavData {
         int outChannel = 0;
         for (WavData d : tracks) {
             for (int c = 0; c < d.channels; c++) {
-                System.arraycopy(d.samples[c], 0, output.samples[outChannel], 0, d.numFrames);
+                SampleStorage.copy(d.storage, c, 0, output.storage, outChannel, 0, d.numFrames);
                 outChannel++;
             }
         }
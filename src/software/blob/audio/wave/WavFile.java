@@ -33,6 +33,7 @@ public class WavFile
 	private double floatScale;				// Scaling factor used for int <-> float conversion				
 	private double floatOffset;			// Offset factor used for int <-> float conversion				
 	private boolean wordAlignAdjust;		// Specify if an extra byte at the end of the data chunk is required for word alignment
+	private long dataOffset;				// Byte offset of the data chunk contents within the file
 
 	// Wav Header
 	private int numChannels;				// 2 bytes unsigned, 0x0001 (1) to 0xFFFF (65,535)
@@ -78,6 +79,41 @@ public class WavFile
 		return validBits;
 	}
 
+	public File getFile()
+	{
+		return file;
+	}
+
+	public int getBytesPerSample()
+	{
+		return bytesPerSample;
+	}
+
+	public int getBlockAlign()
+	{
+		return blockAlign;
+	}
+
+	public long getDataOffset()
+	{
+		return dataOffset;
+	}
+
+	public boolean isFloatingPoint()
+	{
+		return compressionCode == COMPRESSION_FLT;
+	}
+
+	double getFloatScale()
+	{
+		return floatScale;
+	}
+
+	double getFloatOffset()
+	{
+		return floatOffset;
+	}
+
 	public static WavFile newWavFile(File file, int numChannels, long numFrames, int validBits, long sampleRate) throws IOException, WavFileException
 	{
 		// Instantiate new Wavfile and initialise
@@ -267,6 +303,9 @@ public class WavFile
 
 				// Calculate the number of frames
 				wavFile.numFrames = chunkSize / wavFile.blockAlign;
+
+				// Remember where the sample data begins for random access readers
+				wavFile.dataOffset = wavFile.iStream.getChannel().position();
 				
 				// Flag that we've found the wave data chunk
 				foundData = true;
@@ -289,7 +328,7 @@ public class WavFile
 			// If more than 8 validBits, data is signed
 			// Conversion required dividing by magnitude of max negative value
 			wavFile.floatOffset = 0;
-			wavFile.floatScale = 1 << (wavFile.validBits - 1);
+			wavFile.floatScale = 1L << (wavFile.validBits - 1);
 		}
 		else
 		{
@@ -2,6 +2,7 @@ package software.blob.audio.wave;
 
 /**
  * A snippet of WAV data that maintains a reference to the start time of the parent WAV
+ * The samples are a view of the parent's samples until the snippet is modified
  */
 public class WavSnippet extends WavData {
 
@@ -19,9 +20,7 @@ public class WavSnippet extends WavData {
         this.endTime = getTime(endFrame);
         this.numFrames = endFrame - startFrame;
         this.duration = getTime(endFrame) - getTime(startFrame);
-        this.samples = new double[this.channels][this.numFrames];
-        for (int c = 0; c < this.channels; c++)
-            System.arraycopy(parent.samples[c], startFrame, this.samples[c], 0, this.numFrames);
+        this.storage = parent.getStorage().slice(startFrame, this.numFrames);
     }
 
     public WavSnippet(WavData parent) {
@@ -0,0 +1,402 @@
+package software.blob.audio.wave;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streaming wav file writer
+ * Frames are appended in blocks and encoded with bulk buffer puts
+ * The RIFF and data chunk sizes are patched in when the writer is closed,
+ * so the total length doesn't need to be known up front
+ */
+public class WavWriter implements Closeable {
+
+    /**
+     * Output sample format
+     */
+    public enum Format {
+
+        PCM_16(16, false),
+        PCM_24(24, false),
+        FLOAT_32(32, true);
+
+        public final int bits;
+        public final boolean floatingPoint;
+
+        Format(int bits, boolean floatingPoint) {
+            this.bits = bits;
+            this.floatingPoint = floatingPoint;
+        }
+
+        public int getBytesPerSample() {
+            return bits / 8;
+        }
+    }
+
+    // Format tags
+    private static final int FORMAT_PCM = 1;
+    private static final int FORMAT_FLOAT = 3;
+
+    // Number of frames encoded per block
+    private static final int BLOCK_FRAMES = 4096;
+
+    // Offsets of the sizes patched on close
+    private static final int RIFF_SIZE_OFFSET = 4;
+
+    private final File file;
+    private final int channels, sampleRate, blockAlign;
+    private final Format format;
+    private final double scale;
+    private final int dataSizeOffset, factSizeOffset;
+    private final ByteBuffer buffer;
+    private short[] shortBlock;
+    private byte[] byteBlock;
+    private float[] floatBlock;
+    private FileChannel channel;
+    private long framesWritten, clippedSamples;
+
+    // Silence trimming (see setTrimSilence)
+    private boolean trimSilence;
+    private boolean soundWritten;
+    private long pendingSilence;
+    private double[][] silenceBlock;
+
+    /**
+     * Create a new wav file for writing
+     * @param file File to write to (overwritten if it exists)
+     * @param channels Number of channels
+     * @param sampleRate Sample rate
+     * @param format Sample format
+     * @throws IOException Failed to create the file
+     */
+    public WavWriter(File file, int channels, int sampleRate, Format format) throws IOException {
+        if (channels < 1 || channels > 65535)
+            throw new IllegalArgumentException("Illegal number of channels: " + channels);
+        this.file = file;
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.format = format;
+        this.blockAlign = format.getBytesPerSample() * channels;
+        this.scale = Long.MAX_VALUE >> (64 - format.bits);
+        this.buffer = ByteBuffer.allocateDirect(BLOCK_FRAMES * this.blockAlign).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Non-PCM formats require the extended format chunk and a fact chunk
+        boolean pcm = !format.floatingPoint;
+        ByteBuffer header = ByteBuffer.allocate(58).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] {'R', 'I', 'F', 'F'}).putInt(0).put(new byte[] {'W', 'A', 'V', 'E'});
+        header.put(new byte[] {'f', 'm', 't', ' '}).putInt(pcm ? 16 : 18);
+        header.putShort((short) (pcm ? FORMAT_PCM : FORMAT_FLOAT));
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * this.blockAlign);
+        header.putShort((short) this.blockAlign);
+        header.putShort((short) format.bits);
+        if (pcm)
+            this.factSizeOffset = -1;
+        else {
+            header.putShort((short) 0);
+            header.put(new byte[] {'f', 'a', 'c', 't'}).putInt(4);
+            this.factSizeOffset = header.position();
+            header.putInt(0);
+        }
+        header.put(new byte[] {'d', 'a', 't', 'a'});
+        this.dataSizeOffset = header.position();
+        header.putInt(0);
+        header.flip();
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            writeFully(header);
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getNumChannels() {
+        return channels;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Get the number of frames written so far
+     * @return Number of frames
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * Get the number of samples that were out of range and had to be clipped
+     * Floating point output is never clipped
+     * @return Number of clipped samples
+     */
+    public long getClippedSamples() {
+        return clippedSamples;
+    }
+
+    /**
+     * Trim leading and trailing silence while writing
+     * Leading silence is dropped and silence is held back (as a count of frames) until more sound
+     * follows it, so silence at the end is never written and nothing needs to be buffered
+     * Only frames that are exactly zero on every channel count as silence, so writing the held back
+     * frames as zeros reproduces them exactly no matter where the blocks are split
+     * @param trimSilence True to trim silence
+     */
+    public void setTrimSilence(boolean trimSilence) {
+        this.trimSilence = trimSilence;
+    }
+
+    /**
+     * Append frames to the file
+     * @param samples Samples [channel][frame]
+     * @param offset Frame offset within the sample arrays
+     * @param numFrames Number of frames to write
+     * @throws IOException Failed to write
+     */
+    public void write(double[][] samples, int offset, int numFrames) throws IOException {
+        checkOpen();
+        if (!trimSilence) {
+            encodeFrames(samples, offset, numFrames);
+            return;
+        }
+
+        // Skip leading silence
+        int start = offset, end = offset + numFrames;
+        if (!soundWritten) {
+            while (start < end && isSilent(samples, start))
+                start++;
+            if (start == end)
+                return;
+        }
+
+        // Hold back the silence at the end of the block
+        int last = end - 1;
+        while (last >= start && isSilent(samples, last))
+            last--;
+        if (last < start) {
+            pendingSilence += end - start;
+            return;
+        }
+
+        writeSilence();
+        encodeFrames(samples, start, last + 1 - start);
+        soundWritten = true;
+        pendingSilence = end - 1 - last;
+    }
+
+    private void encodeFrames(double[][] samples, int offset, int numFrames) throws IOException {
+        for (int f = 0; f < numFrames; f += BLOCK_FRAMES) {
+            int frames = Math.min(BLOCK_FRAMES, numFrames - f);
+            buffer.clear();
+            encode(samples, offset + f, frames);
+            buffer.flip();
+            writeFully(buffer);
+            framesWritten += frames;
+        }
+    }
+
+    /**
+     * Append frames that are already encoded in the writer's format
+     * The bytes are little-endian and interleaved by channel, as they're stored in the file
+     * Silence trimming only applies to frames written as samples
+     * @param data Encoded frames
+     * @param offset Byte offset within the data
+     * @param length Number of bytes to write (a whole number of frames)
+     * @throws IOException Failed to write
+     */
+    public void write(byte[] data, int offset, int length) throws IOException {
+        checkOpen();
+        if (length % blockAlign != 0)
+            throw new IllegalArgumentException("Length isn't a whole number of frames: "
+                    + length + " % " + blockAlign);
+        writeSilence();
+        for (int b = 0; b < length; b += buffer.capacity()) {
+            int len = Math.min(buffer.capacity(), length - b);
+            buffer.clear();
+            buffer.put(data, offset + b, len);
+            buffer.flip();
+            writeFully(buffer);
+            framesWritten += len / blockAlign;
+        }
+    }
+
+    /**
+     * Append a range of wav data to the file
+     * Channel count must match the writer
+     * @param wav Wav data
+     * @param startFrame First frame to write
+     * @param numFrames Number of frames to write
+     * @throws IOException Failed to write
+     */
+    public void write(WavData wav, int startFrame, int numFrames) throws IOException {
+        if (wav.channels != channels)
+            throw new IllegalArgumentException("Channel mismatch: " + wav.channels + " != " + channels);
+        numFrames = Math.min(numFrames, wav.numFrames - startFrame);
+        double[][] block = new double[channels][Math.max(0, Math.min(BLOCK_FRAMES, numFrames))];
+        for (int f = 0; f < numFrames; f += BLOCK_FRAMES) {
+            int frames = Math.min(BLOCK_FRAMES, numFrames - f);
+            for (int c = 0; c < channels; c++)
+                wav.copySamples(c, startFrame + f, block[c], 0, frames);
+            write(block, 0, frames);
+        }
+    }
+
+    public void write(WavData wav) throws IOException {
+        write(wav, 0, wav.numFrames);
+    }
+
+    /**
+     * Patch the chunk sizes and close the file
+     * @throws IOException Failed to finalize the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null)
+            return;
+        try {
+            long dataSize = framesWritten * blockAlign;
+
+            // Chunks must be word aligned
+            if (dataSize % 2 == 1) {
+                ByteBuffer pad = ByteBuffer.allocate(1);
+                writeFully(pad);
+            }
+
+            long riffSize = channel.position() - 8;
+            if (riffSize > 0xFFFFFFFFL)
+                throw new IOException("Wav file exceeds 4 GB: " + file);
+            patch(RIFF_SIZE_OFFSET, riffSize);
+            patch(dataSizeOffset, dataSize);
+            if (factSizeOffset != -1)
+                patch(factSizeOffset, framesWritten);
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void encode(double[][] samples, int offset, int frames) {
+        int count = frames * channels;
+        switch (format) {
+            case PCM_16: {
+                if (shortBlock == null)
+                    shortBlock = new short[BLOCK_FRAMES * channels];
+                short[] block = shortBlock;
+                for (int c = 0; c < channels; c++) {
+                    double[] in = samples[c];
+                    for (int i = 0, s = c; i < frames; i++, s += channels)
+                        block[s] = (short) toPCM(in[offset + i]);
+                }
+                ShortBuffer sb = buffer.asShortBuffer();
+                sb.put(block, 0, count);
+                buffer.position(count * 2);
+                break;
+            }
+            case PCM_24: {
+                if (byteBlock == null)
+                    byteBlock = new byte[BLOCK_FRAMES * blockAlign];
+                byte[] block = byteBlock;
+                for (int c = 0; c < channels; c++) {
+                    double[] in = samples[c];
+                    for (int i = 0, b = c * 3; i < frames; i++, b += blockAlign) {
+                        long v = toPCM(in[offset + i]);
+                        block[b] = (byte) v;
+                        block[b + 1] = (byte) (v >> 8);
+                        block[b + 2] = (byte) (v >> 16);
+                    }
+                }
+                buffer.put(block, 0, count * 3);
+                break;
+            }
+            case FLOAT_32: {
+                if (floatBlock == null)
+                    floatBlock = new float[BLOCK_FRAMES * channels];
+                float[] block = floatBlock;
+                for (int c = 0; c < channels; c++) {
+                    double[] in = samples[c];
+                    for (int i = 0, s = c; i < frames; i++, s += channels)
+                        block[s] = (float) in[offset + i];
+                }
+                FloatBuffer fb = buffer.asFloatBuffer();
+                fb.put(block, 0, count);
+                buffer.position(count * 4);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Convert a sample to a PCM integer, clipping out-of-range values
+     * @param amp Amplitude
+     * @return PCM value
+     */
+    private long toPCM(double amp) {
+        if (amp > 1) {
+            amp = 1;
+            clippedSamples++;
+        } else if (amp < -1) {
+            amp = -1;
+            clippedSamples++;
+        }
+        return (long) (scale * amp);
+    }
+
+    private boolean isSilent(double[][] samples, int frame) {
+        for (int c = 0; c < channels; c++) {
+            if (samples[c][frame] != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Write the silence that was held back
+     */
+    private void writeSilence() throws IOException {
+        if (pendingSilence == 0)
+            return;
+        if (silenceBlock == null)
+            silenceBlock = new double[channels][BLOCK_FRAMES];
+        while (pendingSilence > 0) {
+            int frames = (int) Math.min(BLOCK_FRAMES, pendingSilence);
+            encodeFrames(silenceBlock, 0, frames);
+            pendingSilence -= frames;
+        }
+    }
+
+    private void patch(int position, long value) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(0, (int) value);
+        channel.write(buf, position);
+    }
+
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining())
+            channel.write(buf);
+    }
+
+    private void checkOpen() throws IOException {
+        if (channel == null)
+            throw new IOException("Writer is closed: " + file);
+    }
+}
@@ -0,0 +1,317 @@
+package software.blob.audio.wave.resample;
+
+import software.blob.audio.wave.storage.DoubleSampleStorage;
+import software.blob.audio.wave.storage.SampleStorage;
+import software.blob.audio.wave.storage.SliceSampleStorage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Windowed-sinc sample rate converter
+ * The Kaiser-windowed sinc kernel is precomputed into a polyphase table for each
+ * source/target rate pair, so converting a sample only takes a table lookup and
+ * a short dot product. Use {@link #get(int, int, Quality)} to share tables.
+ */
+public class Resampler {
+
+    /**
+     * Trade-off between speed and conversion quality
+     */
+    public enum Quality {
+
+        // Short kernel using the nearest table phase (interactive playback)
+        DRAFT(4, 256, 5, 0.90, false),
+
+        // Long kernel interpolated between table phases (export)
+        HIGH(32, 512, 9, 0.97, true);
+
+        final int zeroCrossings, phases;
+        final double beta, rolloff;
+        final boolean interpolate;
+
+        Quality(int zeroCrossings, int phases, double beta, double rolloff, boolean interpolate) {
+            this.zeroCrossings = zeroCrossings;
+            this.phases = phases;
+            this.beta = beta;
+            this.rolloff = rolloff;
+            this.interpolate = interpolate;
+        }
+    }
+
+    // Filter tables by source rate, target rate, and quality
+    private static final Map<String, Resampler> cache = new ConcurrentHashMap<>();
+
+    private final int srcRate, dstRate;
+    private final Quality quality;
+    private final double step;
+    private final int halfTaps, taps, phases;
+    private final double[] table;
+
+    /**
+     * Get a (shared) resampler for a given rate pair
+     * @param srcRate Source sample rate
+     * @param dstRate Target sample rate
+     * @param quality Conversion quality
+     * @return Resampler
+     */
+    public static Resampler get(int srcRate, int dstRate, Quality quality) {
+        String key = srcRate + ":" + dstRate + ":" + quality;
+        Resampler r = cache.get(key);
+        if (r == null) {
+            r = new Resampler(srcRate, dstRate, quality);
+            Resampler existing = cache.putIfAbsent(key, r);
+            if (existing != null)
+                r = existing;
+        }
+        return r;
+    }
+
+    public Resampler(int srcRate, int dstRate, Quality quality) {
+        if (srcRate <= 0 || dstRate <= 0)
+            throw new IllegalArgumentException("Invalid sample rate: " + srcRate + " -> " + dstRate);
+        this.srcRate = srcRate;
+        this.dstRate = dstRate;
+        this.quality = quality;
+        this.step = (double) srcRate / dstRate;
+
+        // Lower the cutoff when downsampling to prevent aliasing
+        // The kernel widens by the same factor to keep the same transition band
+        double cutoff = Math.min(1, (double) dstRate / srcRate) * quality.rolloff;
+        this.halfTaps = (int) Math.ceil(quality.zeroCrossings / Math.min(1d, (double) dstRate / srcRate));
+        this.taps = this.halfTaps * 2;
+        this.phases = quality.phases;
+
+        // Table row p holds the kernel for a fractional offset of p / phases
+        // An extra row is stored so interpolation can reach a full frame
+        this.table = new double[(this.phases + 1) * this.taps];
+        double i0Beta = besselI0(quality.beta);
+        for (int p = 0; p <= this.phases; p++) {
+            double frac = (double) p / this.phases;
+            for (int k = 0; k < this.taps; k++) {
+                double x = (k - this.halfTaps + 1) - frac;
+                double w = x / this.halfTaps;
+                double window = Math.abs(w) >= 1 ? 0 : besselI0(quality.beta * Math.sqrt(1 - w * w)) / i0Beta;
+                this.table[p * this.taps + k] = cutoff * sinc(cutoff * x) * window;
+            }
+        }
+    }
+
+    public int getSourceRate() {
+        return srcRate;
+    }
+
+    public int getTargetRate() {
+        return dstRate;
+    }
+
+    public Quality getQuality() {
+        return quality;
+    }
+
+    /**
+     * Get the number of source frames that advance per output frame
+     * @return Frame step
+     */
+    public double getStep() {
+        return step;
+    }
+
+    /**
+     * Get the number of source frames the kernel reaches on each side of a position
+     * Interpolating at position p reads frames floor(p) - radius + 1 through floor(p) + radius
+     * @return Kernel radius in source frames
+     */
+    public int getKernelRadius() {
+        return halfTaps;
+    }
+
+    /**
+     * Get the number of output frames produced for a given input length
+     * @param numFrames Number of input frames
+     * @return Number of output frames
+     */
+    public int getOutputLength(int numFrames) {
+        return (int) Math.round(dstRate * ((double) numFrames / srcRate));
+    }
+
+    /**
+     * Convert sample storage to the target rate
+     * @param src Source storage
+     * @param numFrames Number of source frames
+     * @return New storage of the same type at the target rate
+     */
+    public SampleStorage process(SampleStorage src, int numFrames) {
+        int outFrames = getOutputLength(numFrames);
+        SampleStorage dst = src.allocate(src.getChannels(), outFrames);
+        if (numFrames == 0 || outFrames == 0)
+            return dst;
+
+        for (int c = 0; c < src.getChannels(); c++)
+            processChannel(src, dst, c, numFrames, outFrames);
+        return dst;
+    }
+
+    private void processChannel(SampleStorage src, SampleStorage dst, int channel, int numFrames, int outFrames) {
+        double[] in = new double[numFrames];
+        src.read(channel, 0, in, 0, numFrames);
+        double[] out = new double[outFrames];
+        process(in, numFrames, out, 0, outFrames, 0);
+        dst.write(channel, 0, out, 0, outFrames);
+    }
+
+    /**
+     * Convert an array of samples
+     * Frames outside the input are treated as repeats of the first/last frame
+     * @param in Input samples
+     * @param inLength Number of input samples
+     * @param out Output samples
+     * @param outOffset Offset within the output array
+     * @param outLength Number of output samples to produce
+     * @param startPos Source position of the first output sample (in source frames)
+     * @return Source position following the last output sample
+     */
+    public double process(double[] in, int inLength, double[] out, int outOffset, int outLength, double startPos) {
+        for (int i = 0; i < outLength; i++)
+            out[outOffset + i] = sample(in, inLength, startPos + i * step);
+        return startPos + outLength * step;
+    }
+
+    /**
+     * Convert a range of samples straight out of sample storage
+     * Heap storage (and slices of it) is read in place; other storage only
+     * has the frames under the filter kernel copied out
+     * @param src Source storage
+     * @param channel Channel number
+     * @param inLength Number of source frames
+     * @param out Output samples
+     * @param outOffset Offset within the output array
+     * @param outLength Number of output samples to produce
+     * @param startPos Source position of the first output sample (in source frames)
+     * @return Source position following the last output sample
+     */
+    public double process(SampleStorage src, int channel, int inLength, double[] out, int outOffset,
+                          int outLength, double startPos) {
+        if (outLength <= 0)
+            return startPos;
+        if (inLength <= 0) {
+            Arrays.fill(out, outOffset, outOffset + outLength, 0);
+            return startPos + outLength * step;
+        }
+        double[] in;
+        int from = 0;
+        double pos = startPos;
+        if (src instanceof DoubleSampleStorage)
+            in = ((DoubleSampleStorage) src).getChannel(channel);
+        else if (src instanceof SliceSampleStorage
+                && ((SliceSampleStorage) src).getParent() instanceof DoubleSampleStorage) {
+            SliceSampleStorage slice = (SliceSampleStorage) src;
+            in = ((DoubleSampleStorage) slice.getParent()).getChannel(channel);
+            from = slice.getOffset();
+            pos += from;
+        } else {
+            // Copy the frames under the kernel, repeating the first/last frame past the edges
+            int first = (int) Math.floor(startPos) - halfTaps + 1;
+            int last = (int) Math.floor(startPos + (outLength - 1) * step) + halfTaps;
+            in = new double[last - first + 1];
+            int start = Math.max(first, 0), end = Math.min(last + 1, inLength);
+            if (start < end)
+                src.read(channel, start, in, start - first, end - start);
+            if (first < start) {
+                double edge = src.get(channel, 0);
+                for (int f = first; f < Math.min(start, last + 1); f++)
+                    in[f - first] = edge;
+            }
+            if (end <= last) {
+                double edge = src.get(channel, inLength - 1);
+                for (int f = Math.max(end, first); f <= last; f++)
+                    in[f - first] = edge;
+            }
+            inLength = in.length;
+            pos -= first;
+        }
+        for (int i = 0; i < outLength; i++)
+            out[outOffset + i] = sample(in, from, from + inLength, pos + i * step);
+        return startPos + outLength * step;
+    }
+
+    /**
+     * Interpolate a single sample at a fractional source position
+     * @param in Input samples
+     * @param inLength Number of input samples
+     * @param pos Source position (in source frames)
+     * @return Interpolated sample
+     */
+    public double sample(double[] in, int inLength, double pos) {
+        return sample(in, 0, inLength, pos);
+    }
+
+    /**
+     * Interpolate a single sample within a range of an array
+     * @param in Input samples
+     * @param from Index of the first input sample
+     * @param to Index following the last input sample
+     * @param pos Array position
+     * @return Interpolated sample
+     */
+    private double sample(double[] in, int from, int to, double pos) {
+        int base = (int) Math.floor(pos);
+        double phase = (pos - base) * phases;
+        int p = (int) phase;
+        int first = base - halfTaps + 1;
+
+        double sum;
+        if (first >= from && first + taps <= to) {
+            // Fast path - whole kernel within the input
+            if (quality.interpolate) {
+                double t = phase - p;
+                int row = p * taps;
+                sum = 0;
+                for (int k = 0; k < taps; k++) {
+                    double c0 = table[row + k];
+                    sum += in[first + k] * (c0 + t * (table[row + taps + k] - c0));
+                }
+            } else {
+                int row = (int) Math.round(phase) * taps;
+                sum = 0;
+                for (int k = 0; k < taps; k++)
+                    sum += in[first + k] * table[row + k];
+            }
+        } else {
+            // Edge of the input - clamp frame indices
+            double t = quality.interpolate ? phase - p : 0;
+            int row = (quality.interpolate ? p : (int) Math.round(phase)) * taps;
+            int last = to - 1;
+            sum = 0;
+            for (int k = 0; k < taps; k++) {
+                int f = first + k;
+                double amp = in[f < from ? from : (f > last ? last : f)];
+                double c0 = table[row + k];
+                sum += amp * (t == 0 ? c0 : c0 + t * (table[row + taps + k] - c0));
+            }
+        }
+        return sum;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0)
+            return 1;
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    /**
+     * Zeroth order modified Bessel function of the first kind (used by the Kaiser window)
+     */
+    private static double besselI0(double x) {
+        double sum = 1, term = 1, halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12)
+                break;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,71 @@
+package software.blob.audio.wave.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Sample storage backed by off-heap direct float buffers
+ * The samples don't count toward the Java heap, so large sample sets
+ * don't add to garbage collection pauses
+ */
+public class DirectSampleStorage extends SampleStorage {
+
+    private final FloatBuffer[] data;
+
+    public DirectSampleStorage(int channels, int length) {
+        super(channels, length);
+
+        // Direct buffers are limited to Integer.MAX_VALUE bytes per channel
+        long bytes = (long) length * Float.BYTES;
+        if (bytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many frames for direct storage: " + length
+                    + " (max " + Integer.MAX_VALUE / Float.BYTES + " per channel)");
+
+        this.data = new FloatBuffer[channels];
+        for (int c = 0; c < channels; c++)
+            this.data[c] = ByteBuffer.allocateDirect((int) bytes)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    @Override
+    public double get(int channel, int frame) {
+        return data[channel].get(frame);
+    }
+
+    @Override
+    public void set(int channel, int frame, double amp) {
+        data[channel].put(frame, (float) amp);
+    }
+
+    @Override
+    public void read(int channel, int frame, double[] dst, int offset, int length) {
+        FloatBuffer samples = data[channel];
+        for (int i = 0; i < length; i++)
+            dst[offset + i] = samples.get(frame + i);
+    }
+
+    @Override
+    public void write(int channel, int frame, double[] src, int offset, int length) {
+        FloatBuffer samples = data[channel];
+        for (int i = 0; i < length; i++)
+            samples.put(frame + i, (float) src[offset + i]);
+    }
+
+    @Override
+    public void add(int channel, int frame, double[] src, int offset, int length) {
+        FloatBuffer samples = data[channel];
+        for (int i = 0; i < length; i++)
+            samples.put(frame + i, (float) (samples.get(frame + i) + src[offset + i]));
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return (long) channels * length * Float.BYTES;
+    }
+
+    @Override
+    public SampleStorage allocate(int channels, int length) {
+        return new DirectSampleStorage(channels, length);
+    }
+}
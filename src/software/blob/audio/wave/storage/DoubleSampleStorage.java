@@ -0,0 +1,79 @@
+package software.blob.audio.wave.storage;
+
+import java.util.Arrays;
+
+/**
+ * Sample storage backed by on-heap double arrays
+ */
+public class DoubleSampleStorage extends SampleStorage {
+
+    private final double[][] data;
+
+    public DoubleSampleStorage(double[][] data) {
+        super(data.length, data.length > 0 ? data[0].length : 0);
+        this.data = data;
+    }
+
+    public DoubleSampleStorage(int channels, int length) {
+        this(new double[channels][length]);
+    }
+
+    /**
+     * Get the backing arrays for this storage
+     * @return Samples [channel][frame]
+     */
+    public double[][] getData() {
+        return data;
+    }
+
+    /**
+     * Get the backing array for a channel
+     * @param channel Channel number
+     * @return Samples
+     */
+    public double[] getChannel(int channel) {
+        return data[channel];
+    }
+
+    @Override
+    public double get(int channel, int frame) {
+        return data[channel][frame];
+    }
+
+    @Override
+    public void set(int channel, int frame, double amp) {
+        data[channel][frame] = amp;
+    }
+
+    @Override
+    public void read(int channel, int frame, double[] dst, int offset, int length) {
+        System.arraycopy(data[channel], frame, dst, offset, length);
+    }
+
+    @Override
+    public void write(int channel, int frame, double[] src, int offset, int length) {
+        System.arraycopy(src, offset, data[channel], frame, length);
+    }
+
+    @Override
+    public void add(int channel, int frame, double[] src, int offset, int length) {
+        double[] samples = data[channel];
+        for (int i = 0; i < length; i++)
+            samples[frame + i] += src[offset + i];
+    }
+
+    @Override
+    public void clear(int channel, int frame, int length) {
+        Arrays.fill(data[channel], frame, frame + length, 0);
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return (long) channels * length * Double.BYTES;
+    }
+
+    @Override
+    public SampleStorage allocate(int channels, int length) {
+        return new DoubleSampleStorage(channels, length);
+    }
+}
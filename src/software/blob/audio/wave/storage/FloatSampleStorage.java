@@ -0,0 +1,63 @@
+package software.blob.audio.wave.storage;
+
+import java.util.Arrays;
+
+/**
+ * Sample storage backed by on-heap 32-bit float arrays
+ * Uses half the memory of {@link DoubleSampleStorage} at reduced precision
+ */
+public class FloatSampleStorage extends SampleStorage {
+
+    private final float[][] data;
+
+    public FloatSampleStorage(int channels, int length) {
+        super(channels, length);
+        this.data = new float[channels][length];
+    }
+
+    @Override
+    public double get(int channel, int frame) {
+        return data[channel][frame];
+    }
+
+    @Override
+    public void set(int channel, int frame, double amp) {
+        data[channel][frame] = (float) amp;
+    }
+
+    @Override
+    public void read(int channel, int frame, double[] dst, int offset, int length) {
+        float[] samples = data[channel];
+        for (int i = 0; i < length; i++)
+            dst[offset + i] = samples[frame + i];
+    }
+
+    @Override
+    public void write(int channel, int frame, double[] src, int offset, int length) {
+        float[] samples = data[channel];
+        for (int i = 0; i < length; i++)
+            samples[frame + i] = (float) src[offset + i];
+    }
+
+    @Override
+    public void add(int channel, int frame, double[] src, int offset, int length) {
+        float[] samples = data[channel];
+        for (int i = 0; i < length; i++)
+            samples[frame + i] += src[offset + i];
+    }
+
+    @Override
+    public void clear(int channel, int frame, int length) {
+        Arrays.fill(data[channel], frame, frame + length, 0);
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return (long) channels * length * Float.BYTES;
+    }
+
+    @Override
+    public SampleStorage allocate(int channels, int length) {
+        return new FloatSampleStorage(channels, length);
+    }
+}
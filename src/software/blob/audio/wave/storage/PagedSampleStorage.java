@@ -0,0 +1,172 @@
+package software.blob.audio.wave.storage;
+
+import software.blob.audio.wave.MappedWavReader;
+import software.blob.audio.wave.WavFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only sample storage that leaves the samples in a memory-mapped wav file
+ * Frames are decoded on demand in fixed-size pages, with the most recently used
+ * pages kept in a small cache
+ */
+public class PagedSampleStorage extends SampleStorage {
+
+    // Number of frames per page (power of 2)
+    private static final int PAGE_SHIFT = 14;
+    private static final int PAGE_FRAMES = 1 << PAGE_SHIFT;
+
+    // Maximum number of decoded pages to keep
+    private static final int CACHE_PAGES = 16;
+
+    private final MappedWavReader reader;
+    private final Map<Integer, Page> pages;
+
+    // Last page accessed - checked before the cache to avoid locking on sequential reads
+    private volatile Page lastPage;
+
+    /**
+     * Map a wav file for paged reading
+     * @param file Wav file
+     * @throws IOException Failed to map the file
+     * @throws WavFileException Invalid wav file or unsupported sample format
+     */
+    public PagedSampleStorage(File file) throws IOException, WavFileException {
+        this(openReader(file));
+    }
+
+    private PagedSampleStorage(MappedWavReader reader) throws WavFileException {
+        super(reader.getNumChannels(), (int) reader.getNumFrames());
+        if (reader.getNumFrames() > Integer.MAX_VALUE)
+            throw new WavFileException("Wav file has too many frames: " + reader.getFile());
+        this.reader = reader;
+        this.pages = new LinkedHashMap<Integer, Page>(CACHE_PAGES * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+                return size() > CACHE_PAGES;
+            }
+        };
+    }
+
+    private static MappedWavReader openReader(File file) throws IOException, WavFileException {
+        // The mapping stays valid once the channel is closed
+        MappedWavReader reader = new MappedWavReader(file);
+        try {
+            reader.map();
+        } finally {
+            reader.close();
+        }
+        return reader;
+    }
+
+    public File getFile() {
+        return reader.getFile();
+    }
+
+    public int getSampleRate() {
+        return reader.getSampleRate();
+    }
+
+    @Override
+    public double get(int channel, int frame) {
+        Page page = getPage(frame >> PAGE_SHIFT);
+        return page.data[channel][frame - page.start];
+    }
+
+    @Override
+    public void set(int channel, int frame, double amp) {
+        throw new UnsupportedOperationException("Paged sample storage is read-only");
+    }
+
+    @Override
+    public void read(int channel, int frame, double[] dst, int offset, int length) {
+        while (length > 0) {
+            Page page = getPage(frame >> PAGE_SHIFT);
+            int pageOffset = frame - page.start;
+            int len = Math.min(length, page.length - pageOffset);
+            System.arraycopy(page.data[channel], pageOffset, dst, offset, len);
+            frame += len;
+            offset += len;
+            length -= len;
+        }
+    }
+
+    @Override
+    public void write(int channel, int frame, double[] src, int offset, int length) {
+        throw new UnsupportedOperationException("Paged sample storage is read-only");
+    }
+
+    @Override
+    public void add(int channel, int frame, double[] src, int offset, int length) {
+        throw new UnsupportedOperationException("Paged sample storage is read-only");
+    }
+
+    @Override
+    public void clear(int channel, int frame, int length) {
+        throw new UnsupportedOperationException("Paged sample storage is read-only");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        synchronized (pages) {
+            return (long) pages.size() * channels * PAGE_FRAMES * Double.BYTES;
+        }
+    }
+
+    @Override
+    public SampleStorage allocate(int channels, int length) {
+        return new DoubleSampleStorage(channels, length);
+    }
+
+    /**
+     * Get a decoded page, decoding it if it isn't cached
+     * @param index Page index
+     * @return Page
+     */
+    private Page getPage(int index) {
+        Page page = lastPage;
+        if (page != null && page.index == index)
+            return page;
+        if (index < 0 || index > (length - 1) >> PAGE_SHIFT)
+            throw new IndexOutOfBoundsException("Frame out of range: page " + index);
+        synchronized (pages) {
+            page = pages.get(index);
+            if (page == null) {
+                page = new Page(index);
+                pages.put(index, page);
+            }
+        }
+        lastPage = page;
+        return page;
+    }
+
+    /**
+     * A decoded range of frames
+     */
+    private class Page {
+
+        final int index, start, length;
+        final double[][] data;
+
+        Page(int index) {
+            this.index = index;
+            this.start = index << PAGE_SHIFT;
+            this.length = Math.min(PAGE_FRAMES, PagedSampleStorage.this.length - this.start);
+            this.data = new double[channels][this.length];
+            try {
+                reader.readFrames(this.start, this.data, 0, this.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package software.blob.audio.wave.storage;
+
+/**
+ * Backing store for the sample data of a {@link software.blob.audio.wave.WavData}
+ * Samples are addressed by channel and frame and exchanged as doubles
+ */
+public abstract class SampleStorage {
+
+    // Number of frames per block when copying between storage types
+    protected static final int BLOCK_SIZE = 4096;
+
+    protected final int channels, length;
+
+    // True once a slice has been taken of this storage
+    private volatile boolean shared;
+
+    protected SampleStorage(int channels, int length) {
+        this.channels = channels;
+        this.length = length;
+    }
+
+    /**
+     * Get the number of channels in this storage
+     * @return Number of channels
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Get the number of frames per channel in this storage
+     * @return Number of frames
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get a single sample
+     * @param channel Channel number
+     * @param frame Frame number
+     * @return Sample amplitude
+     */
+    public abstract double get(int channel, int frame);
+
+    /**
+     * Set a single sample
+     * @param channel Channel number
+     * @param frame Frame number
+     * @param amp Sample amplitude
+     */
+    public abstract void set(int channel, int frame, double amp);
+
+    /**
+     * Copy a range of samples from a channel into an array
+     * @param channel Channel number
+     * @param frame First frame to read
+     * @param dst Destination array
+     * @param offset Offset within the destination array
+     * @param length Number of frames to read
+     */
+    public void read(int channel, int frame, double[] dst, int offset, int length) {
+        for (int i = 0; i < length; i++)
+            dst[offset + i] = get(channel, frame + i);
+    }
+
+    /**
+     * Copy a range of samples from an array into a channel
+     * @param channel Channel number
+     * @param frame First frame to write
+     * @param src Source array
+     * @param offset Offset within the source array
+     * @param length Number of frames to write
+     */
+    public void write(int channel, int frame, double[] src, int offset, int length) {
+        for (int i = 0; i < length; i++)
+            set(channel, frame + i, src[offset + i]);
+    }
+
+    /**
+     * Add a range of samples from an array to a channel
+     * @param channel Channel number
+     * @param frame First frame to mix into
+     * @param src Source array
+     * @param offset Offset within the source array
+     * @param length Number of frames to mix
+     */
+    public void add(int channel, int frame, double[] src, int offset, int length) {
+        for (int i = 0; i < length; i++)
+            set(channel, frame + i, get(channel, frame + i) + src[offset + i]);
+    }
+
+    /**
+     * Zero a range of samples in a channel
+     * @param channel Channel number
+     * @param frame First frame to clear
+     * @param length Number of frames to clear
+     */
+    public void clear(int channel, int frame, int length) {
+        for (int i = 0; i < length; i++)
+            set(channel, frame + i, 0);
+    }
+
+    /**
+     * Check if this storage can be modified
+     * Read-only storage must be copied before writing
+     * @return True if read-only
+     */
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    /**
+     * Check if there are slices viewing this storage
+     * Shared storage must be copied before writing so the slices don't change
+     * @return True if shared
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    void markShared() {
+        this.shared = true;
+    }
+
+    /**
+     * Get a read-only view of a range of this storage without copying it
+     * @param startFrame First frame of the view
+     * @param length Number of frames in the view
+     * @return Storage view
+     */
+    public SampleStorage slice(int startFrame, int length) {
+        if (startFrame == 0 && length == this.length && isReadOnly())
+            return this;
+        return new SliceSampleStorage(this, startFrame, length);
+    }
+
+    /**
+     * Get the approximate number of bytes held by this storage
+     * @return Memory usage in bytes
+     */
+    public abstract long getMemoryUsage();
+
+    /**
+     * Allocate new zero-filled storage of the same type
+     * Read-only storage allocates writable storage instead
+     * @param channels Number of channels
+     * @param length Number of frames
+     * @return New storage
+     */
+    public abstract SampleStorage allocate(int channels, int length);
+
+    /**
+     * Create a writable copy of a range of this storage
+     * @param startFrame First frame to copy
+     * @param length Number of frames to copy
+     * @return Copied storage
+     */
+    public SampleStorage copy(int startFrame, int length) {
+        SampleStorage copy = allocate(this.channels, length);
+        for (int c = 0; c < this.channels; c++)
+            copy(this, c, startFrame, copy, c, 0, length);
+        return copy;
+    }
+
+    /**
+     * Copy samples from one storage channel to another
+     * @param src Source storage
+     * @param srcChannel Source channel
+     * @param srcFrame Source start frame
+     * @param dst Destination storage
+     * @param dstChannel Destination channel
+     * @param dstFrame Destination start frame
+     * @param length Number of frames to copy
+     */
+    public static void copy(SampleStorage src, int srcChannel, int srcFrame,
+                            SampleStorage dst, int dstChannel, int dstFrame, int length) {
+        if (length <= 0)
+            return;
+
+        // Read straight from the parent of a slice
+        if (src instanceof SliceSampleStorage) {
+            SliceSampleStorage slice = (SliceSampleStorage) src;
+            srcFrame += slice.getOffset();
+            src = slice.getParent();
+        }
+
+        // Copy directly from/to the arrays where possible
+        if (src instanceof DoubleSampleStorage) {
+            dst.write(dstChannel, dstFrame, ((DoubleSampleStorage) src).getChannel(srcChannel), srcFrame, length);
+            return;
+        } else if (dst instanceof DoubleSampleStorage) {
+            src.read(srcChannel, srcFrame, ((DoubleSampleStorage) dst).getChannel(dstChannel), dstFrame, length);
+            return;
+        }
+
+        double[] buf = new double[Math.min(length, BLOCK_SIZE)];
+        for (int i = 0; i < length; i += buf.length) {
+            int len = Math.min(buf.length, length - i);
+            src.read(srcChannel, srcFrame + i, buf, 0, len);
+            dst.write(dstChannel, dstFrame + i, buf, 0, len);
+        }
+    }
+}
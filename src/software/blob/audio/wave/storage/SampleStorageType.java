@@ -0,0 +1,66 @@
+package software.blob.audio.wave.storage;
+
+import java.util.Locale;
+
+/**
+ * Writable sample storage backends
+ */
+public enum SampleStorageType {
+
+    // On-heap double arrays (full precision)
+    DOUBLE(DoubleSampleStorage.class),
+
+    // On-heap float arrays (half the memory)
+    FLOAT(FloatSampleStorage.class),
+
+    // Off-heap direct float buffers (half the memory, outside the GC heap)
+    DIRECT(DirectSampleStorage.class);
+
+    private final Class<? extends SampleStorage> storageClass;
+
+    SampleStorageType(Class<? extends SampleStorage> storageClass) {
+        this.storageClass = storageClass;
+    }
+
+    /**
+     * Allocate new zero-filled storage of this type
+     * @param channels Number of channels
+     * @param length Number of frames
+     * @return New storage
+     */
+    public SampleStorage allocate(int channels, int length) {
+        switch (this) {
+            case FLOAT:
+                return new FloatSampleStorage(channels, length);
+            case DIRECT:
+                return new DirectSampleStorage(channels, length);
+            default:
+                return new DoubleSampleStorage(channels, length);
+        }
+    }
+
+    /**
+     * Check if storage is of this type
+     * @param storage Sample storage
+     * @return True if the storage matches this type
+     */
+    public boolean isInstance(SampleStorage storage) {
+        return storage != null && storage.getClass() == storageClass;
+    }
+
+    /**
+     * Get a storage type by name (case-insensitive)
+     * @param name Type name
+     * @param defType Type to return if the name doesn't match any type
+     * @return Storage type
+     */
+    public static SampleStorageType fromName(String name, SampleStorageType defType) {
+        if (name != null) {
+            for (SampleStorageType type : values()) {
+                if (type.name().equals(name.toUpperCase(Locale.ROOT)))
+                    return type;
+            }
+        }
+        return defType;
+    }
+}
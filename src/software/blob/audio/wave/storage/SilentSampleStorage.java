@@ -0,0 +1,74 @@
+package software.blob.audio.wave.storage;
+
+import java.util.Arrays;
+
+/**
+ * Read-only storage of silence that holds no samples
+ * Used for timelines that only need a length, sample rate and loop points
+ */
+public class SilentSampleStorage extends SampleStorage {
+
+    /**
+     * @param channels Number of channels
+     * @param length Number of frames
+     */
+    public SilentSampleStorage(int channels, int length) {
+        super(channels, length);
+        if (channels < 0 || length < 0)
+            throw new IllegalArgumentException("Invalid silent storage size: "
+                    + channels + " x " + length);
+    }
+
+    @Override
+    public double get(int channel, int frame) {
+        return 0;
+    }
+
+    @Override
+    public void set(int channel, int frame, double amp) {
+        throw new UnsupportedOperationException("Silent sample storage is read-only");
+    }
+
+    @Override
+    public void read(int channel, int frame, double[] dst, int offset, int length) {
+        Arrays.fill(dst, offset, offset + length, 0);
+    }
+
+    @Override
+    public void write(int channel, int frame, double[] src, int offset, int length) {
+        throw new UnsupportedOperationException("Silent sample storage is read-only");
+    }
+
+    @Override
+    public void add(int channel, int frame, double[] src, int offset, int length) {
+        throw new UnsupportedOperationException("Silent sample storage is read-only");
+    }
+
+    @Override
+    public void clear(int channel, int frame, int length) {
+        throw new UnsupportedOperationException("Silent sample storage is read-only");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public SampleStorage slice(int startFrame, int length) {
+        if (startFrame < 0 || length < 0 || startFrame + length > this.length)
+            throw new IndexOutOfBoundsException("Slice out of range: " + startFrame + "+" + length
+                    + " > " + this.length);
+        return startFrame == 0 && length == this.length ? this : new SilentSampleStorage(channels, length);
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        return 0;
+    }
+
+    @Override
+    public SampleStorage allocate(int channels, int length) {
+        return new DoubleSampleStorage(channels, length);
+    }
+}
@@ -0,0 +1,89 @@
+package software.blob.audio.wave.storage;
+
+/**
+ * Read-only view of a range of frames in another storage
+ * No samples are copied - the owner of the parent storage copies its samples
+ * before its next write, and anyone writing to the view gets a copy of the range
+ */
+public class SliceSampleStorage extends SampleStorage {
+
+    private final SampleStorage parent;
+    private final int offset;
+
+    /**
+     * Create a view of a range of frames
+     * @param parent Parent storage (flagged as shared)
+     * @param offset First frame of the view within the parent
+     * @param length Number of frames in the view
+     */
+    public SliceSampleStorage(SampleStorage parent, int offset, int length) {
+        super(parent.getChannels(), length);
+        if (offset < 0 || length < 0 || offset + length > parent.getLength())
+            throw new IndexOutOfBoundsException("Slice out of range: " + offset + "+" + length
+                    + " > " + parent.getLength());
+
+        // Always view the original storage so reads only go through one level
+        if (parent instanceof SliceSampleStorage) {
+            SliceSampleStorage slice = (SliceSampleStorage) parent;
+            offset += slice.offset;
+            parent = slice.parent;
+        }
+        parent.markShared();
+        this.parent = parent;
+        this.offset = offset;
+    }
+
+    public SampleStorage getParent() {
+        return parent;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public double get(int channel, int frame) {
+        return parent.get(channel, offset + frame);
+    }
+
+    @Override
+    public void set(int channel, int frame, double amp) {
+        throw new UnsupportedOperationException("Sample storage slice is read-only");
+    }
+
+    @Override
+    public void read(int channel, int frame, double[] dst, int offset, int length) {
+        parent.read(channel, this.offset + frame, dst, offset, length);
+    }
+
+    @Override
+    public void write(int channel, int frame, double[] src, int offset, int length) {
+        throw new UnsupportedOperationException("Sample storage slice is read-only");
+    }
+
+    @Override
+    public void add(int channel, int frame, double[] src, int offset, int length) {
+        throw new UnsupportedOperationException("Sample storage slice is read-only");
+    }
+
+    @Override
+    public void clear(int channel, int frame, int length) {
+        throw new UnsupportedOperationException("Sample storage slice is read-only");
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public long getMemoryUsage() {
+        // The samples belong to the parent
+        return 0;
+    }
+
+    @Override
+    public SampleStorage allocate(int channels, int length) {
+        return parent.allocate(channels, length);
+    }
+}